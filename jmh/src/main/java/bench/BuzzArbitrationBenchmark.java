@@ -0,0 +1,83 @@
+package bench;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.QuestionBank;
+import model.UDPMessage;
+import server.BuzzQueue;
+import server.BuzzRateLimiter;
+import server.ClientConnection;
+import server.GameRoom;
+import server.ServerTrivia;
+
+// What UDPThread does per buzz (rate limit probe, frame check, session lookup, address check, BuzzQueue) at
+// several room sizes; the limit is set high enough that it never drops. Once every player has buzzed the
+// queue orders the presses and clears, as closing the window and the next question do.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuzzArbitrationBenchmark {
+
+    @Param({"8", "64", "1024", "16384"})
+    public int players;
+
+    private ServerTrivia server;
+    private BuzzQueue buzzQueue;
+    private ByteBuffer[] frames;
+    private InetAddress sender;
+    private InetSocketAddress[] sources;
+    private BuzzRateLimiter rateLimiter;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        server = Fixtures.newServer();
+        GameRoom room = new GameRoom(1, server, new QuestionBank(), players);
+        buzzQueue = room.getBuzzQueue();
+        sender = InetAddress.getLoopbackAddress();
+        frames = new ByteBuffer[players];
+        sources = new InetSocketAddress[players];
+        rateLimiter = new BuzzRateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                                          Integer.MAX_VALUE, players * 2);
+        for (int id = 1; id <= players; id++) {
+            sources[id - 1] = new InetSocketAddress(sender, 1024 + id);
+            Fixtures.BenchConnection connection = new Fixtures.BenchConnection(id, server, room, sender);
+            server.addClient(id, connection);
+            frames[id - 1] = ByteBuffer.wrap(new UDPMessage(0, 1, connection.getSessionToken()).encode());
+        }
+    }
+
+    @Benchmark
+    public boolean arbitrate() {
+        ByteBuffer frame = frames[next];
+        boolean accepted = false;
+        if (rateLimiter.tryAcquire(sources[next], System.nanoTime()) && UDPMessage.isBuzz(frame)) {
+            ClientConnection client = server.getSessionTable().lookup(UDPMessage.readToken(frame));
+            accepted = client != null && client.getClientAddress().equals(sender) && buzzQueue.addBuzz(client, next);
+        }
+        if (++next == frames.length) {
+            next = 0;
+            buzzQueue.getFirstBuzzedClient(); // Orders every press, as closing the window does
+            buzzQueue.clear(); // Next question
+        }
+        return accepted;
+    }
+}
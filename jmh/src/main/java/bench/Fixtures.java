@@ -0,0 +1,84 @@
+package bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import server.ClientConnection;
+import server.GameRoom;
+import server.ServerConfig;
+import server.ServerTrivia;
+
+// Servers, connections and files shared by the JMH benchmarks
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    // A server with nothing started: no sockets, no event log, and score updates coalesced per client so the
+    // queues of connections nobody drains stay at one frame
+    static ServerTrivia newServer() {
+        return new ServerTrivia(new ServerConfig()
+                .set("wal.enabled", "false")
+                .set("outbound.policy", "coalesce")
+                .set("room.questionsPerGame", "1"));
+    }
+
+    // A questions.txt of the given size, in the format QuestionFootprintBench generates
+    static Path writeBank(Path directory, int questions) throws IOException {
+        Path source = directory.resolve("questions.txt");
+        Random random = new Random(questions);
+        try (Writer writer = Files.newBufferedWriter(source, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= questions; i++) {
+                writer.write(QuestionFootprintBench.line(random, i));
+                writer.write('\n');
+            }
+        }
+        return source;
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    // A connection with no socket behind it; frames stay in its outbound queue
+    static final class BenchConnection extends ClientConnection {
+        private final InetAddress address;
+
+        BenchConnection(int id, ServerTrivia server, GameRoom room, InetAddress address) {
+            super(id, server, room);
+            this.address = address;
+        }
+
+        @Override
+        protected void requestFlush() {
+        }
+
+        @Override
+        public String getClientIP() {
+            return address.getHostAddress();
+        }
+
+        @Override
+        public InetAddress getClientAddress() {
+            return address;
+        }
+
+        @Override
+        protected void closeConnection() {
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.FrameCodec;
+import model.Question;
+import model.TCPMessage;
+import server.Scoreboard;
+
+// Frame encode and decode of a question and of an 8-player score delta; ObjectStreamBenchmark has the
+// serialization the protocol used before as a baseline
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+
+    @Param({"question", "scores"})
+    public String payload;
+
+    private TCPMessage message;
+    private byte[] frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        message = "question".equals(payload) ? question() : scores();
+        frame = FrameCodec.encode(message);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return FrameCodec.encode(message);
+    }
+
+    @Benchmark
+    public TCPMessage decode() throws IOException {
+        return FrameCodec.nextFrame(ByteBuffer.wrap(frame));
+    }
+
+    static TCPMessage question() {
+        Question question = new Question("Which team won the 2016 championship after trailing 3-1 in the finals?",
+                new String[] {"Cleveland Cavaliers", "Golden State Warriors", "San Antonio Spurs", "Miami Heat"}, 'A', 17);
+        return new TCPMessage(TCPMessage.MessageType.QUESTION, question);
+    }
+
+    private static TCPMessage scores() {
+        Scoreboard scoreboard = new Scoreboard(64);
+        for (int id = 1; id <= 8; id++) {
+            scoreboard.addScore(scoreboard.addPlayer(id), id * 10);
+        }
+        return new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, scoreboard.changesSince(0));
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.QuestionCorpus;
+import model.QuestionStore;
+
+// Question loading against bank size: compiling questions.txt into the mapped corpus, which happens once
+// per edit of the file, and opening the compiled corpus, which every server start does
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class QuestionLoadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int questions;
+
+    private Path directory;
+    private Path source;
+    private Path compiled;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("questionload");
+        source = Fixtures.writeBank(directory, questions);
+        compiled = directory.resolve("questions.tqb");
+        QuestionCorpus.compile(source, compiled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int compile() throws IOException {
+        return QuestionCorpus.compile(source, compiled);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public int open() throws IOException {
+        QuestionStore store = QuestionCorpus.open(compiled);
+        return store.getQuestion(store.size()).getQuestionNumber();
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.QuestionBank;
+import model.ScoreUpdate;
+import model.TCPMessage;
+import server.ClientConnection;
+import server.EncodedMessage;
+import server.GameRoom;
+import server.Scoreboard;
+import server.ServerTrivia;
+
+// One score change published to a whole room: delta, one encode, a send per member
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoreBroadcastBenchmark {
+
+    @Param({"8", "64", "512"})
+    public int players;
+
+    private Random random;
+    private Scoreboard scoreboard;
+    private ClientConnection[] members;
+
+    @Setup
+    public void setUp() {
+        random = new Random(players);
+        ServerTrivia server = Fixtures.newServer();
+        GameRoom room = new GameRoom(1, server, new QuestionBank(), players);
+        scoreboard = new Scoreboard(4096);
+        members = new ClientConnection[players];
+        for (int id = 1; id <= players; id++) {
+            members[id - 1] = new Fixtures.BenchConnection(id, server, room, InetAddress.getLoopbackAddress());
+            scoreboard.addPlayer(id);
+        }
+    }
+
+    @Benchmark
+    public int broadcast() throws IOException {
+        long base = scoreboard.getVersion();
+        scoreboard.addScore(random.nextInt(players), 10);
+        ScoreUpdate delta = scoreboard.changesSince(base);
+        EncodedMessage message = EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, delta), base);
+        for (ClientConnection member : members) {
+            member.sendEncoded(message);
+        }
+        return message.size();
+    }
+}
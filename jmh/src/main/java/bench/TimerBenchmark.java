@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.HashedWheelTimer;
+
+// Arming and cancelling one room deadline on the timing wheel and, as the baseline, on a
+// ScheduledThreadPoolExecutor, with nothing or a million other deadlines already armed
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerBenchmark {
+
+    @State(Scope.Thread)
+    public static class Wheel {
+        @Param({"0", "1000000"})
+        public int armed;
+
+        HashedWheelTimer timer;
+
+        @Setup
+        public void setUp() {
+            timer = new HashedWheelTimer("bench-timer", 10, 512);
+            for (int i = 0; i < armed; i++) {
+                timer.newTimeout(() -> { }, 1 + i % 3600, TimeUnit.SECONDS);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            timer.stop();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Executor {
+        @Param({"0", "1000000"})
+        public int armed;
+
+        ScheduledThreadPoolExecutor executor;
+
+        @Setup
+        public void setUp() {
+            executor = new ScheduledThreadPoolExecutor(1);
+            executor.setRemoveOnCancelPolicy(true);
+            for (int i = 0; i < armed; i++) {
+                executor.schedule(() -> { }, 1 + i % 3600, TimeUnit.SECONDS);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public boolean wheel(Wheel state) {
+        return state.timer.newTimeout(() -> { }, 15, TimeUnit.SECONDS).cancel();
+    }
+
+    @Benchmark
+    public boolean scheduledExecutor(Executor state) {
+        return state.executor.schedule(() -> { }, 15, TimeUnit.SECONDS).cancel(false);
+    }
+}
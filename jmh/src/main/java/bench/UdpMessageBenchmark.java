@@ -0,0 +1,56 @@
+package bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.UDPMessage;
+
+// Buzz frame encode, decode into a UDPMessage, and the in-place field reads UDPThread uses instead
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UdpMessageBenchmark {
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(UDPMessage.SIZE);
+    private final ByteBuffer[] frames = new ByteBuffer[16];
+    private int next = 0;
+
+    // Several distinct frames, so the JIT cannot hoist the decode out of the loop
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = ByteBuffer.wrap(new UDPMessage(System.currentTimeMillis() + i, i, 42 + i).encode());
+        }
+    }
+
+    @Benchmark
+    public byte encode() {
+        buffer.clear();
+        new UDPMessage(next, ++next & 0xFF, 42).encode(buffer);
+        return buffer.get(UDPMessage.SIZE - 1);
+    }
+
+    @Benchmark
+    public int decode() {
+        return UDPMessage.decode(frames[++next & 15].duplicate()).getToken();
+    }
+
+    @Benchmark
+    public int readInPlace() {
+        ByteBuffer frame = frames[++next & 15];
+        return UDPMessage.isBuzz(frame) ? UDPMessage.readToken(frame) + UDPMessage.readQuestionNumber(frame) : 0;
+    }
+}
@@ -0,0 +1,103 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import model.UDPMessage;
+
+// Single-core cost of taking one buzz off the wire, before and after the fixed-layout frame
+// "serialized" replays the old UDPThread loop: new DatagramPacket, Arrays.copyOfRange and an
+// ObjectInputStream decode of a serialized message. "fixed" copies the 20 byte frame into a reused direct
+// buffer (standing in for DatagramChannel.receive) and reads the fields in place.
+//
+// Usage: java -cp out bench.BuzzIngestBench [packets]
+public class BuzzIngestBench {
+
+    // Same shape as the buzz that used to be serialized for every press
+    private static class SerializedBuzz implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final long timestamp;
+        private final String ip;
+
+        SerializedBuzz(long timestamp, String ip) {
+            this.timestamp = timestamp;
+            this.ip = ip;
+        }
+    }
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int packets = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new SerializedBuzz(System.currentTimeMillis(), "192.168.1.20"));
+        }
+        byte[] serialized = bytes.toByteArray();
+        byte[] fixed = new UDPMessage(System.currentTimeMillis(), 7, 42).encode();
+
+        System.out.println("path,bytesPerPacket,packetsPerSecond,bytesAllocatedPerPacket");
+        // Warm up both paths before measuring
+        runSerialized(serialized, packets / 10);
+        runFixed(fixed, packets);
+        System.out.println(measure("serialized", serialized.length, packets / 10, () -> runSerialized(serialized, packets / 10)));
+        System.out.println(measure("fixed", fixed.length, packets, () -> runFixed(fixed, packets)));
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    private static String measure(String path, int size, int packets, Run run) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        run.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long perSecond = (long) (packets / (elapsed / 1e9));
+        return path + "," + size + "," + perSecond + "," + (allocated / packets);
+    }
+
+    private static void runSerialized(byte[] wire, int packets) throws IOException, ClassNotFoundException {
+        byte[] incomingData = new byte[512];
+        for (int i = 0; i < packets; i++) {
+            System.arraycopy(wire, 0, incomingData, 0, wire.length);
+            DatagramPacket packet = new DatagramPacket(incomingData, incomingData.length);
+            packet.setLength(wire.length);
+            byte[] data = Arrays.copyOfRange(packet.getData(), 0, packet.getLength());
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                sink += ((SerializedBuzz) in.readObject()).timestamp;
+            }
+        }
+    }
+
+    private static void runFixed(byte[] wire, int packets) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(UDPMessage.SIZE * 4);
+        for (int i = 0; i < packets; i++) {
+            buffer.clear();
+            buffer.put(wire);
+            buffer.flip();
+            if (UDPMessage.isBuzz(buffer)) {
+                sink += UDPMessage.readTimestamp(buffer) + UDPMessage.readToken(buffer);
+            }
+        }
+    }
+
+    // Bytes allocated so far by this thread, where the JVM exposes it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,129 @@
+package bench;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import server.ThreadMode;
+
+// Compares the cached platform-thread pool with virtual threads for idle client connections
+// Every simulated client is a loopback socket whose server-side handler blocks in readInt(), exactly like
+// ClientThread waiting for the next frame. Prints one CSV row per mode and client count.
+//
+// Usage: java -cp out bench.ConnectionScaleBench [clientCounts] [modes]
+//   e.g. java -Xss256k -cp out bench.ConnectionScaleBench 1000,10000,50000 cached,virtual
+// Each client uses two file descriptors, so raise the limit first (ulimit -n 120000) for 50k clients. All
+// clients connect to one loopback port, so 50k also needs more ephemeral ports than Linux's default 28k
+// (net.ipv4.ip_local_port_range), and the cached mode a thread per client under the pid limit.
+// The virtual mode needs Java 21 or newer and is skipped on older JVMs.
+//
+// Measured on Java 21.0.1, one core, -Xss256k, with a hard limit of 20000 open files that could not be
+// raised, so 9900 clients is the most that fit; at 10000 the acceptor ran out of descriptors at about
+// 9990 parked handlers. 50k was not reachable for the same reason.
+//   mode     clients  setupMillis  platformThreads  heapUsedMB
+//   cached      1000          326             1007          15
+//   cached      5000         1131             5007          69
+//   cached      9900         2549             9907         135
+//   virtual     1000          117               12          14
+//   virtual     5000          228               12          66
+//   virtual     9900          526               12         107
+public class ConnectionScaleBench {
+
+    public static void main(String[] args) throws Exception {
+        String[] counts = (args.length > 0 ? args[0] : "1000,10000,50000").split(",");
+        String[] modes = (args.length > 1 ? args[1] : "cached,virtual").split(",");
+
+        System.out.println("mode,clients,connected,setupMillis,platformThreads,peakPlatformThreads,heapUsedMB");
+        for (String modeName : modes) {
+            ThreadMode mode = ThreadMode.parse(modeName);
+            if (mode == ThreadMode.VIRTUAL && !ThreadMode.virtualThreadsAvailable()) {
+                System.err.println("Skipping virtual mode: this JVM has no virtual threads");
+                continue;
+            }
+            for (String count : counts) {
+                System.out.println(run(mode, Integer.parseInt(count.trim())));
+            }
+        }
+    }
+
+    // Connects the given number of idle clients and reports the cost of keeping them parked
+    private static String run(ThreadMode mode, int clients) throws Exception {
+        ExecutorService executor = mode.newExecutor();
+        ServerSocket serverSocket = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+        CountDownLatch parked = new CountDownLatch(clients);
+        List<SocketChannel> channels = new ArrayList<>(clients);
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (!serverSocket.isClosed()) {
+                    Socket socket = serverSocket.accept();
+                    executor.submit(() -> blockLikeClientThread(socket, parked));
+                }
+            } catch (IOException e) {
+                // Closed at the end of the run, or out of file descriptors
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Acceptor stopped: " + e.getMessage());
+                }
+            } catch (OutOfMemoryError e) {
+                // The cached pool hit the OS thread limit; report how far it got
+                System.err.println("Executor could not start another thread: " + e.getMessage());
+            }
+        }, "bench-acceptor");
+        acceptor.start();
+
+        long start = System.nanoTime();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        int connected = 0;
+        try {
+            for (; connected < clients; connected++) {
+                channels.add(SocketChannel.open(address));
+            }
+        } catch (IOException e) {
+            System.err.println("Stopped at " + connected + " clients: " + e.getMessage());
+        }
+        boolean allParked = parked.await(120, TimeUnit.SECONDS);
+        long setupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (!allParked) {
+            System.err.println("Only " + (clients - parked.getCount()) + " handlers parked before timeout");
+        }
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsed = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        int peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        serverSocket.close();
+        acceptor.join();
+        executor.shutdown();
+        executor.awaitTermination(60, TimeUnit.SECONDS);
+
+        return mode.name().toLowerCase() + "," + clients + "," + connected + "," + setupMillis + "," +
+               threads + "," + peakThreads + "," + heapUsed;
+    }
+
+    // Same shape as ClientThread.run(): park in a blocking read until the peer goes away
+    private static void blockLikeClientThread(Socket socket, CountDownLatch parked) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            parked.countDown();
+            in.readInt();
+        } catch (IOException e) {
+            // Client closed its end
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package bench;
+
+import java.io.IOException;
+import java.util.Random;
+
+import model.ScoreUpdate;
+import model.TCPMessage;
+import server.EncodedMessage;
+import server.Scoreboard;
+
+// Cost of publishing one player's leaderboard as the room grows
+// "table" encodes the full score table (what every client got before ranked windows); "window" builds and
+// encodes a ranked window of the top 10 plus two neighbours either side. Each round first applies one
+// random score change, as a tick would.
+//
+// Usage: java -cp out bench.LeaderboardBench [sizes...]
+public class LeaderboardBench {
+
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {100, 1_000, 10_000, 100_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("players,mode,ns_per_publish,bytes_per_publish");
+        for (int players : sizes) {
+            Scoreboard scoreboard = new Scoreboard(4096);
+            Random random = new Random(players);
+            for (int id = 1; id <= players; id++) {
+                scoreboard.addPlayer(id);
+                scoreboard.addScore(id, random.nextInt(1000));
+            }
+            run(scoreboard, players, random, false);
+            run(scoreboard, players, random, true);
+        }
+    }
+
+    private static void run(Scoreboard scoreboard, int players, Random random, boolean windowed) throws IOException {
+        // Keep the total work roughly constant so large tables finish in reasonable time
+        int rounds = windowed ? 200_000 : Math.max(20, 2_000_000 / players);
+        long bytes = 0;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            bytes = 0;
+            for (int i = 0; i < rounds; i++) {
+                int player = 1 + random.nextInt(players);
+                scoreboard.addScore(player, random.nextInt(21) - 10);
+                ScoreUpdate update = windowed ? scoreboard.rankedWindow(player, 10, 2) : scoreboard.snapshot();
+                EncodedMessage message = EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, update));
+                bytes += message.size();
+                sink += message.size();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (warmup == 1) {
+                System.out.println(players + "," + (windowed ? "window" : "table") + "," + (elapsed / rounds) + "," +
+                                   (bytes / rounds));
+            }
+        }
+    }
+}
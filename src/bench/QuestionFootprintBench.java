@@ -0,0 +1,126 @@
+package bench;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.Difficulty;
+import model.Question;
+import model.QuestionStore;
+
+// Heap held by a bank of questions, as Question objects versus the dictionary-encoded QuestionStore
+// Questions are synthetic but shaped like the real bank: a unique question text and four options drawn
+// from pools of teams, players and years, so options repeat the way they do across large banks.
+// "objects" parses each line into its own Strings like the original loader; "store" builds the in-memory
+// QuestionStore. Heap is measured as used memory after GC with the bank still reachable.
+//
+// Usage: java -Xmx4g -cp out bench.QuestionFootprintBench [questions...]
+public class QuestionFootprintBench {
+
+    private static final String[] TEAMS = {
+        "Atlanta Hawks", "Boston Celtics", "Brooklyn Nets", "Charlotte Hornets", "Chicago Bulls",
+        "Cleveland Cavaliers", "Dallas Mavericks", "Denver Nuggets", "Detroit Pistons", "Golden State Warriors",
+        "Houston Rockets", "Indiana Pacers", "Los Angeles Clippers", "Los Angeles Lakers", "Memphis Grizzlies",
+        "Miami Heat", "Milwaukee Bucks", "Minnesota Timberwolves", "New Orleans Pelicans", "New York Knicks",
+        "Oklahoma City Thunder", "Orlando Magic", "Philadelphia 76ers", "Phoenix Suns", "Portland Trail Blazers",
+        "Sacramento Kings", "San Antonio Spurs", "Toronto Raptors", "Utah Jazz", "Washington Wizards"
+    };
+    private static final String[] CATEGORIES = {"teams", "players", "records", "history"};
+
+    private static Object keep;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = {100_000, 1_000_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("questions,representation,heap_bytes,bytes_per_question");
+        for (int count : sizes) {
+            long before = usedHeap();
+            keep = buildObjects(count);
+            long objects = usedHeap() - before;
+            keep = null;
+            print(count, "objects", objects);
+
+            before = usedHeap();
+            keep = buildStore(count);
+            long store = usedHeap() - before;
+            keep = null;
+            print(count, "store", store);
+            System.out.printf("%d,ratio,%.2f,%n", count, (double) objects / store);
+        }
+    }
+
+    private static List<Question> buildObjects(int count) {
+        Random random = new Random(count);
+        List<Question> questions = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            String line = line(random, i);
+            String[] parts = line.split("\\|");
+            String[] options = new String[4];
+            System.arraycopy(parts, 1, options, 0, 4);
+            questions.add(new Question(parts[0], options, parts[5].charAt(0), i,
+                                       parts[6].trim().toLowerCase(), Difficulty.parse(parts[7])));
+        }
+        return questions;
+    }
+
+    private static QuestionStore buildStore(int count) throws IOException {
+        Random random = new Random(count);
+        QuestionStore.Builder builder = QuestionStore.Builder.inMemory();
+        for (int i = 1; i <= count; i++) {
+            String[] parts = line(random, i).split("\\|");
+            String[] options = new String[4];
+            System.arraycopy(parts, 1, options, 0, 4);
+            builder.add(parts[0], options, parts[5].charAt(0), parts[6], Difficulty.parse(parts[7]));
+        }
+        return builder.build();
+    }
+
+    // One questions.txt line; the option pool depends on the kind of question
+    static String line(Random random, int number) {
+        StringBuilder line = new StringBuilder(160);
+        int kind = random.nextInt(3);
+        switch (kind) {
+            case 0:
+                line.append("Which franchise won the championship in season number ").append(number).append('?');
+                break;
+            case 1:
+                line.append("Which player led the league in assists during game ").append(number).append('?');
+                break;
+            default:
+                line.append("In what year was record number ").append(number).append(" first set?");
+                break;
+        }
+        for (int i = 0; i < 4; i++) {
+            line.append('|');
+            if (kind == 0) {
+                line.append(TEAMS[random.nextInt(TEAMS.length)]);
+            } else if (kind == 1) {
+                line.append("Player ").append(random.nextInt(2000));
+            } else {
+                line.append(1950 + random.nextInt(75));
+            }
+        }
+        line.append('|').append((char) ('A' + random.nextInt(4)));
+        line.append('|').append(CATEGORIES[kind]);
+        line.append('|').append(Difficulty.values()[random.nextInt(3)].name().toLowerCase());
+        return line.toString();
+    }
+
+    private static void print(int count, String representation, long bytes) {
+        System.out.println(count + "," + representation + "," + bytes + "," + (bytes / count));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -6,14 +6,20 @@ import java.io.*;
 import java.net.*;
 import javax.swing.*;
 
+import model.ClockReading;
+import model.FrameCodec;
+import model.HashedWheelTimer;
 import model.PlayerAnswer;
 import model.Question;
+import model.ScoreUpdate;
 import model.TCPMessage;
 import model.UDPMessage;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 // Modified by Brooks - Client GUI for multiplayer trivia game
 // Handles all user interaction and network communication
@@ -28,13 +34,16 @@ public class ClientWindow implements ActionListener {
     private JLabel score;
     private JTextArea leaderboardArea;
     private JScrollPane leaderboardScroll;
-    private TimerTask clock;
+    private TimerCode clock;
+    private final HashedWheelTimer countdown = new HashedWheelTimer("countdown", 50, 64); // One ticking thread for every countdown
     private JFrame window;
     
     // Game State
     private Question currentQuestion;
     private int playerScore = 0;
+    private final Map<Integer, Integer> leaderboard = new HashMap<>();
     private boolean eligibility = false;
+    private volatile int sessionToken = 0; // Identifies this player's buzzes to the server
     
     // Network Configuration
     private String serverIP;
@@ -42,9 +51,12 @@ public class ClientWindow implements ActionListener {
     private int UDPserverPort;
     
     // Network Connections
-    private ObjectInputStream tcpIn;
-    private ObjectOutputStream tcpOut;
+    private DataInputStream tcpIn;
+    private DataOutputStream tcpOut;
     private Socket tcpSocket;
+    private DatagramSocket buzzSocket;
+    private DatagramPacket buzzPacket;
+    private final ByteBuffer buzzBuffer = ByteBuffer.allocate(UDPMessage.SIZE);
 
     // Added by Eric - Client window constructor
     // Modified by pierce - start eligibility as false for each client.
@@ -163,23 +175,60 @@ public class ClientWindow implements ActionListener {
         window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     }
 
-    private void updateLeaderboard(Map<Integer, Integer> scores) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(String.format("%-12s %6s\n", "PLAYER", "SCORE"));
-        sb.append("-------------------\n");
-        
-        scores.entrySet().stream()
-            .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
-            .forEach(entry -> {
-                sb.append(String.format("%-12s %6d\n", 
-                    "Player " + entry.getKey(), 
-                    entry.getValue()));
+    // Applies a score update and redraws the leaderboard
+    // Small rooms send the whole table, which is sorted here; large rooms send a ranked window that is
+    // already in order, so the client never sorts more than a few dozen rows
+    private void updateLeaderboard(ScoreUpdate update) {
+        StringBuilder sb = new StringBuilder(64 + 24 * Math.max(update.size(), leaderboard.size()));
+        appendRow(sb, "#", "PLAYER", "SCORE");
+        sb.append("-----------------------\n");
+
+        if (update.isRanked()) {
+            leaderboard.clear();
+            int previousRank = 0;
+            for (int i = 0; i < update.size(); i++) {
+                if (update.getRank(i) > previousRank + 1) {
+                    sb.append("   ...\n");
+                }
+                previousRank = update.getRank(i);
+                appendRow(sb, Integer.toString(previousRank), "Player " + update.getPlayerId(i),
+                          Integer.toString(update.getScore(i)));
+            }
+            if (previousRank < update.getPlayerCount()) {
+                sb.append("   ... of ").append(update.getPlayerCount()).append(" players\n");
+            }
+        } else {
+            update.applyTo(leaderboard);
+            Integer[] order = leaderboard.keySet().toArray(new Integer[0]);
+            // Highest score first, ties by player ID as on the server
+            Arrays.sort(order, (a, b) -> {
+                int byScore = Integer.compare(leaderboard.get(b), leaderboard.get(a));
+                return byScore != 0 ? byScore : Integer.compare(a, b);
             });
-        
+            for (int i = 0; i < order.length; i++) {
+                appendRow(sb, Integer.toString(i + 1), "Player " + order[i], leaderboard.get(order[i]).toString());
+            }
+        }
+
         leaderboardArea.setText(sb.toString());
         leaderboardArea.setCaretPosition(0); // Scroll to top
     }
 
+    // Fixed-width row: rank right-aligned in 3, player left-aligned in 12, score right-aligned in 6
+    private static void appendRow(StringBuilder sb, String rank, String player, String score) {
+        pad(sb, 3 - rank.length()).append(rank).append(' ');
+        sb.append(player);
+        pad(sb, 12 - player.length()).append(' ');
+        pad(sb, 6 - score.length()).append(score).append('\n');
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int spaces) {
+        for (int i = 0; i < spaces; i++) {
+            sb.append(' ');
+        }
+        return sb;
+    }
+
     // Added by Brooks - Establishes server connection with proper resource management
     private void connectToServer() {
         System.out.println("Attempting to connect to server...");
@@ -187,8 +236,8 @@ public class ClientWindow implements ActionListener {
             try {
                 tcpSocket = new Socket();
                 tcpSocket.connect(new InetSocketAddress(serverIP, TCPserverPort), 5000);
-                tcpOut = new ObjectOutputStream(tcpSocket.getOutputStream());
-                tcpIn = new ObjectInputStream(tcpSocket.getInputStream());
+                tcpOut = new DataOutputStream(new BufferedOutputStream(tcpSocket.getOutputStream()));
+                tcpIn = new DataInputStream(new BufferedInputStream(tcpSocket.getInputStream()));
                 System.out.println("Connected to server!");
                 break;
             } catch (IOException e) {
@@ -208,12 +257,19 @@ public class ClientWindow implements ActionListener {
     private void listenForTcpMessages() {
         try {
             while (true) {
-                Object message = tcpIn.readObject();
-                if (message instanceof TCPMessage) {
-                    processTcpMessage((TCPMessage) message);
+                TCPMessage message = FrameCodec.readFrame(tcpIn);
+                long receivedAt = System.currentTimeMillis();
+                if (message.getType() == TCPMessage.MessageType.PING) {
+                    // Answered right here rather than on the EDT, so a busy UI never looks like a dead connection
+                    // The timestamps let the server work out this machine's clock offset for buzz ordering
+                    ClockReading reading = new ClockReading((Long) message.getPayload(), receivedAt,
+                                                            System.currentTimeMillis());
+                    sendFrame(new TCPMessage(TCPMessage.MessageType.PONG, reading));
+                } else {
+                    processTcpMessage(message);
                 }
             }
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace(); // Log the specific exception
             SwingUtilities.invokeLater(() -> 
                 JOptionPane.showMessageDialog(window, "Connection error: " + e.getMessage()));
@@ -221,6 +277,13 @@ public class ClientWindow implements ActionListener {
         }
     }
 
+    // Heartbeat replies come from the listener thread and answers from the EDT; one frame at a time
+    private void sendFrame(TCPMessage message) throws IOException {
+        synchronized (tcpOut) {
+            FrameCodec.writeFrame(tcpOut, message);
+        }
+    }
+
     // Added by Brooks - Handles different message types
     // Modified by Eric - Correctly handles the flow of the game using the various methods implemented, Question message serves as the "NEXT"
     private void processTcpMessage(TCPMessage message) {
@@ -263,13 +326,13 @@ public class ClientWindow implements ActionListener {
                     break;
                     
                 case SCORE_UPDATE:
-                    if (message.getPayload() instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<Integer, Integer> scores = (Map<Integer, Integer>) message.getPayload();
-                        updateLeaderboard(scores);
-                    }
+                    updateLeaderboard((ScoreUpdate) message.getPayload());
                     break;
                 
+                case SESSION:
+                    sessionToken = (Integer) message.getPayload();
+                    break;
+
                 case KILL_CLIENT:
                     killClient();
                     break;
@@ -329,7 +392,7 @@ public class ClientWindow implements ActionListener {
         }
         
         clock = new TimerCode(15, false);
-        new Timer().schedule(clock, 0, 1000);
+        clock.start();
         if(eligibility == true){
             poll.setEnabled(true);
         }
@@ -343,21 +406,19 @@ public class ClientWindow implements ActionListener {
     }
 
     // Added by Eric - send the buzz to the server using UDP when polling
+    // The socket, packet and buffer are created once and reused for every press
     private void sendBuzzMessage() {
-        try (DatagramSocket socket = new DatagramSocket()) {
-            UDPMessage message = new UDPMessage(
-                System.currentTimeMillis(), 
-                InetAddress.getLocalHost().getHostAddress()
-            );
-            
-            byte[] data = message.encode();
-            DatagramPacket packet = new DatagramPacket(
-                data, data.length, 
-                InetAddress.getByName(serverIP), 
-                UDPserverPort
-            );
-            
-            socket.send(packet);
+        try {
+            if (buzzSocket == null) {
+                buzzSocket = new DatagramSocket();
+                buzzPacket = new DatagramPacket(buzzBuffer.array(), UDPMessage.SIZE,
+                    InetAddress.getByName(serverIP), UDPserverPort);
+            }
+            int questionNumber = currentQuestion != null ? currentQuestion.getQuestionNumber() : 0;
+            buzzBuffer.clear();
+            new UDPMessage(System.currentTimeMillis(), questionNumber, sessionToken).encode(buzzBuffer);
+
+            buzzSocket.send(buzzPacket);
             System.out.println("Buzz message sent");
         } catch (Exception e) {
             JOptionPane.showMessageDialog(window, "Error sending buzz: " + e.getMessage());
@@ -378,7 +439,7 @@ public class ClientWindow implements ActionListener {
             clock.cancel();
         }
         clock = new TimerCode(10, true);
-        new Timer().schedule(clock, 0, 1000);
+        clock.start();
     }
 
     // Added by Brooks - Handles NACK from server
@@ -450,8 +511,7 @@ public class ClientWindow implements ActionListener {
                     currentQuestion.getQuestionNumber(),
                     selectedAnswer
                 );
-                tcpOut.writeObject(answer);
-                tcpOut.flush();
+                sendFrame(new TCPMessage(TCPMessage.MessageType.ANSWER, answer));
                 submit.setEnabled(false);
                 if (clock != null) clock.cancel();
             } catch (IOException ex) {
@@ -462,25 +522,52 @@ public class ClientWindow implements ActionListener {
 
     // Modified by Brooks - Enhanced timer class
     // Modified by Eric - removes local penalty application and waits for TIMEOUT of QUESTION
-    private class TimerCode extends TimerTask {
+    // Each second is one timeout on the shared wheel, armed by the previous one; all state stays on the EDT
+    private class TimerCode implements Runnable {
         private int duration;
+        private long startedAt;
+        private int ticks = 0;
+        private boolean cancelled = false;
+        private HashedWheelTimer.Timeout next;
+
         public TimerCode(int duration, boolean isAnswerPeriod) {
             this.duration = duration;
         }
-        
+
+        void start() {
+            startedAt = System.nanoTime();
+            next = countdown.newTimeout(this, 0, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (next != null) {
+                next.cancel();
+            }
+        }
+
+        // Runs on the wheel's thread; the display is updated on the EDT
         @Override
         public void run() {
-            SwingUtilities.invokeLater(() -> {
-                if (duration < 0) {
-                    timer.setText("<html>Time expired</html>");
-                    this.cancel();
-                } else {
-                    timer.setForeground(duration < 6 ? Color.RED : Color.BLUE);
-                    timer.setText(duration + "");
-                    duration--;
-                }
-                window.repaint();
-            });
+            SwingUtilities.invokeLater(this::tick);
+        }
+
+        private void tick() {
+            if (cancelled) {
+                return;
+            }
+            if (duration < 0) {
+                timer.setText("<html>Time expired</html>");
+                cancelled = true;
+            } else {
+                timer.setForeground(duration < 6 ? Color.RED : Color.BLUE);
+                timer.setText(duration + "");
+                duration--;
+                // Measured from the start so the countdown does not drift with EDT delays
+                long due = startedAt + TimeUnit.SECONDS.toNanos(++ticks);
+                next = countdown.newTimeout(this, due - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            window.repaint();
         }
     }
 
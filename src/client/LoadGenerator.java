@@ -0,0 +1,517 @@
+package client;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.ClockReading;
+import model.FrameCodec;
+import model.LatencyHistogram;
+import model.PlayerAnswer;
+import model.Question;
+import model.QuestionBank;
+import model.TCPMessage;
+import model.UDPMessage;
+
+// Headless client that plays as thousands of simulated players from one JVM
+// Each bot speaks the same protocol as ClientWindow: it reads frames over TCP, buzzes over UDP with its
+// session token when it becomes eligible and answers over TCP when ACKed. Bots are spread over a few
+// selector loops, so a player costs two sockets and a few hundred bytes rather than a thread. Buzz odds, think
+// times and answer accuracy are configurable. Every few seconds it prints throughput and the latencies the
+// bots observe; at the end it also prints the latency quantiles the server itself recorded, scraped from
+// its metrics endpoint.
+//
+// The correct answer never leaves the server, so bots look answers up in the local question bank
+// (config/questions.txt); run it from a checkout with the same questions as the server for accuracy to hold.
+//
+// Usage: java -cp out client.LoadGenerator [--option value ...]
+//   --players 1000        simulated players          --loops <cores>         selector threads
+//   --ramp 500            connections per second     --duration 0            seconds to run (0 = until every game ends)
+//   --buzz 0.8            chance to buzz per question --buzzDelay 50-500     ms from eligibility to buzz
+//   --accuracy 0.7        chance to answer correctly --answerDelay 100-1000  ms from ACK to answer
+//   --rejoin false        reconnect after GAME_OVER  --seed 1
+//   --host/--tcpPort/--udpPort  server address (defaults from config/config.txt)
+//   --metrics http://127.0.0.1:9400/metrics        server metrics to scrape at the end ("" to skip)
+public class LoadGenerator {
+    private static final int BUZZ = 1;
+    private static final int ANSWER = 2;
+
+    private String host = "127.0.0.1";
+    private int tcpPort = 7000;
+    private int udpPort = 7001;
+    private int players = 1000;
+    private int loopCount = Runtime.getRuntime().availableProcessors();
+    private int rampPerSecond = 500;
+    private long durationSeconds = 0;
+    private double buzzProbability = 0.8;
+    private long[] buzzDelay = {50, 500};
+    private double accuracy = 0.7;
+    private long[] answerDelay = {100, 1000};
+    private boolean rejoin = false;
+    private long seed = 1;
+    private String metricsUrl = "http://127.0.0.1:9400/metrics";
+
+    private QuestionBank answers;
+    private InetSocketAddress tcpAddress;
+    private InetSocketAddress udpAddress;
+    private volatile boolean running = true;
+
+    // Counters shared by every loop
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger(); // Bots connected or connecting
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong buzzesSent = new AtomicLong();
+    private final AtomicLong answersSent = new AtomicLong();
+    private final AtomicLong correctAnswers = new AtomicLong();
+    private final AtomicLong gamesFinished = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final LatencyHistogram connectLatency = new LatencyHistogram("connect", "TCP connect to SESSION");
+    private final LatencyHistogram buzzLatency = new LatencyHistogram("buzz", "Buzz sent to ACK or NACK");
+    private final LatencyHistogram verdictLatency = new LatencyHistogram("verdict", "Answer sent to verdict");
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.readConfig();
+        generator.parseArgs(args);
+        generator.run();
+    }
+
+    // Same server address file as ClientWindow; command-line options override it
+    private void readConfig() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("config/config.txt"))) {
+            host = reader.readLine().trim();
+            tcpPort = Integer.parseInt(reader.readLine().trim());
+            udpPort = Integer.parseInt(reader.readLine().trim());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Using default server address: " + e.getMessage());
+        }
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--host": host = value; break;
+                case "--tcpPort": tcpPort = Integer.parseInt(value); break;
+                case "--udpPort": udpPort = Integer.parseInt(value); break;
+                case "--players": players = Integer.parseInt(value); break;
+                case "--loops": loopCount = Math.max(1, Integer.parseInt(value)); break;
+                case "--ramp": rampPerSecond = Math.max(1, Integer.parseInt(value)); break;
+                case "--duration": durationSeconds = Long.parseLong(value); break;
+                case "--buzz": buzzProbability = Double.parseDouble(value); break;
+                case "--buzzDelay": buzzDelay = range(value); break;
+                case "--accuracy": accuracy = Double.parseDouble(value); break;
+                case "--answerDelay": answerDelay = range(value); break;
+                case "--rejoin": rejoin = Boolean.parseBoolean(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--metrics": metricsUrl = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    // "min-max" or a single value, in milliseconds
+    private static long[] range(String value) {
+        String[] parts = value.split("-");
+        long min = Long.parseLong(parts[0].trim());
+        long max = parts.length > 1 ? Long.parseLong(parts[1].trim()) : min;
+        return new long[] {min, Math.max(min, max)};
+    }
+
+    private void run() throws Exception {
+        answers = new QuestionBank();
+        tcpAddress = new InetSocketAddress(host, tcpPort);
+        udpAddress = new InetSocketAddress(host, udpPort);
+        System.out.println("Load generator: " + players + " players on " + loopCount + " loops against " + tcpAddress);
+
+        Loop[] loops = new Loop[loopCount];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new Loop(new Random(seed + i));
+            Thread thread = new Thread(loops[i], "load-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        long deadline = durationSeconds > 0 ? start + durationSeconds * 1_000_000_000L : Long.MAX_VALUE;
+        long nextReport = start + 5_000_000_000L;
+        long lastFrames = 0;
+        long lastReport = start;
+        int launched = 0;
+        while (System.nanoTime() < deadline) {
+            // Ramp connections up at the configured rate so the accept backlog does not overflow
+            long allowed = Math.min(players, 1 + (System.nanoTime() - start) * rampPerSecond / 1_000_000_000L);
+            while (launched < allowed) {
+                loops[launched % loops.length].connect(new Bot(launched + 1));
+                launched++;
+            }
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                long frames = framesReceived.get();
+                report(String.format(Locale.ROOT, "%5ds", (now - start) / 1_000_000_000L),
+                       (frames - lastFrames) / ((now - lastReport) / 1e9));
+                lastFrames = frames;
+                lastReport = now;
+                nextReport = now + 5_000_000_000L;
+            }
+            if (launched == players && active.get() == 0 && !rejoin) {
+                break; // Every bot has finished its game
+            }
+            Thread.sleep(10);
+        }
+        running = false;
+        for (Loop loop : loops) {
+            loop.selector.wakeup();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report("total", framesReceived.get() / seconds);
+        System.out.printf(Locale.ROOT, "buzzes/s %.1f, answers/s %.1f, accuracy %.2f, games finished %d, connect failures %d%n",
+                          buzzesSent.get() / seconds, answersSent.get() / seconds,
+                          answersSent.get() == 0 ? 0.0 : (double) correctAnswers.get() / answersSent.get(),
+                          gamesFinished.get(), connectFailures.get());
+        printServerMetrics();
+    }
+
+    private void report(String label, double framesPerSecond) {
+        System.out.printf(Locale.ROOT, "[%s] connected %d, frames/s %.0f, buzzes %d, answers %d | connect %s | buzz->reply %s | answer->verdict %s%n",
+                          label, connected.get(), framesPerSecond, buzzesSent.get(), answersSent.get(),
+                          quantiles(connectLatency), quantiles(buzzLatency), quantiles(verdictLatency));
+    }
+
+    private static String quantiles(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "p50 %.2f p99 %.2f p999 %.2f max %.2f ms (n=%d)",
+                             histogram.valueAtQuantile(0.5) / 1e6, histogram.valueAtQuantile(0.99) / 1e6,
+                             histogram.valueAtQuantile(0.999) / 1e6, histogram.getMax() / 1e6, histogram.getCount());
+    }
+
+    // The server's own view of the run: its latency quantiles and gauges from the Prometheus endpoint
+    private void printServerMetrics() {
+        if (metricsUrl.isEmpty()) {
+            return;
+        }
+        try (InputStream in = new URL(metricsUrl).openStream()) {
+            System.out.println("Server metrics from " + metricsUrl + ":");
+            for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                if (line.startsWith("trivia_") && (line.contains("quantile=\"0.5\"") || line.contains("quantile=\"0.99\"") ||
+                                                   line.contains("_max ") || line.contains("_count ") || !line.contains("_seconds"))) {
+                    System.out.println("  " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server metrics unavailable: " + e.getMessage());
+        }
+    }
+
+    // One simulated player; only ever touched by the loop that owns it
+    private final class Bot {
+        final int number;
+        SocketChannel channel;
+        DatagramChannel udp;   // Own buzz socket, as a real client has; the server rate-limits per source port
+        ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+        final Queue<ByteBuffer> writes = new ArrayDeque<>();
+        long connectStarted;
+        boolean connected;
+        boolean closed;
+        int token;
+        int questionNumber;
+        long buzzSentAt;   // Non-zero while waiting for the ACK or NACK to this bot's buzz
+        long answerSentAt; // Non-zero while waiting for the verdict
+
+        Bot(int number) {
+            this.number = number;
+        }
+    }
+
+    private static final class Timer implements Comparable<Timer> {
+        final long at;
+        final Bot bot;
+        final int action;
+        final int questionNumber;
+
+        Timer(long at, Bot bot, int action, int questionNumber) {
+            this.at = at;
+            this.bot = bot;
+            this.action = action;
+            this.questionNumber = questionNumber;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            return Long.compare(at, other.at);
+        }
+    }
+
+    // Selector thread owning a share of the bots and their think-time timers
+    private final class Loop implements Runnable {
+        final Selector selector;
+        final Random random;
+        final Queue<Bot> pending = new ConcurrentLinkedQueue<>();
+        final PriorityQueue<Timer> timers = new PriorityQueue<>();
+        final ByteBuffer buzzBuffer = ByteBuffer.allocateDirect(UDPMessage.SIZE);
+
+        Loop(Random random) throws IOException {
+            this.selector = Selector.open();
+            this.random = random;
+        }
+
+        void connect(Bot bot) {
+            pending.add(bot);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    Timer next = timers.peek();
+                    long waitMillis = next == null ? 100 : Math.max(1, (next.at - System.nanoTime()) / 1_000_000);
+                    selector.select(Math.min(waitMillis, 100));
+                    Bot bot;
+                    while ((bot = pending.poll()) != null) {
+                        open(bot);
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        handle(key);
+                    }
+                    long now = System.nanoTime();
+                    while ((next = timers.peek()) != null && next.at <= now) {
+                        timers.poll();
+                        fire(next);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Load loop failed: " + e.getMessage());
+            }
+        }
+
+        private void open(Bot bot) {
+            active.incrementAndGet();
+            try {
+                bot.channel = SocketChannel.open();
+                bot.channel.configureBlocking(false);
+                bot.connectStarted = System.nanoTime();
+                if (bot.channel.connect(tcpAddress)) {
+                    onConnected(bot);
+                    bot.channel.register(selector, SelectionKey.OP_READ, bot);
+                } else {
+                    bot.channel.register(selector, SelectionKey.OP_CONNECT, bot);
+                }
+            } catch (IOException e) {
+                connectFailures.incrementAndGet();
+                close(bot);
+            }
+        }
+
+        private void onConnected(Bot bot) {
+            bot.connected = true;
+            connected.incrementAndGet();
+        }
+
+        private void handle(SelectionKey key) {
+            Bot bot = (Bot) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    bot.channel.finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                    onConnected(bot);
+                    return;
+                }
+                if (key.isReadable()) {
+                    read(bot);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(bot, key);
+                }
+            } catch (IOException e) {
+                if (!bot.connected) {
+                    connectFailures.incrementAndGet();
+                }
+                close(bot);
+            }
+        }
+
+        private void read(Bot bot) throws IOException {
+            if (bot.channel.read(bot.readBuffer) < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            bot.readBuffer.flip();
+            TCPMessage message;
+            while (!bot.closed && (message = FrameCodec.nextFrame(bot.readBuffer)) != null) {
+                framesReceived.incrementAndGet();
+                onMessage(bot, message);
+            }
+            if (bot.closed) {
+                return;
+            }
+            bot.readBuffer.compact();
+            if (!bot.readBuffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(bot.readBuffer.capacity() * 2);
+                bot.readBuffer.flip();
+                bot.readBuffer = larger.put(bot.readBuffer);
+            }
+        }
+
+        private void onMessage(Bot bot, TCPMessage message) throws IOException {
+            long now = System.nanoTime();
+            switch (message.getType()) {
+                case SESSION:
+                    bot.token = (Integer) message.getPayload();
+                    connectLatency.record(now - bot.connectStarted);
+                    break;
+                case QUESTION:
+                    Question question = (Question) message.getPayload();
+                    bot.questionNumber = question != null ? question.getQuestionNumber() : 0;
+                    bot.buzzSentAt = 0;
+                    break;
+                case ELIGIBILITY:
+                    if (random.nextDouble() < buzzProbability) {
+                        timers.add(new Timer(now + think(buzzDelay), bot, BUZZ, bot.questionNumber));
+                    }
+                    break;
+                case ACK:
+                    if (bot.buzzSentAt != 0) {
+                        buzzLatency.record(now - bot.buzzSentAt);
+                        bot.buzzSentAt = 0;
+                    }
+                    timers.add(new Timer(now + think(answerDelay), bot, ANSWER, bot.questionNumber));
+                    break;
+                case NACK:
+                    if (bot.buzzSentAt != 0) {
+                        buzzLatency.record(now - bot.buzzSentAt);
+                        bot.buzzSentAt = 0;
+                    }
+                    break;
+                case CORRECT:
+                case WRONG:
+                case TIMEOUT:
+                    if (bot.answerSentAt != 0) {
+                        verdictLatency.record(now - bot.answerSentAt);
+                        bot.answerSentAt = 0;
+                    }
+                    break;
+                case PING:
+                    long clientClock = System.currentTimeMillis();
+                    ClockReading reading = new ClockReading((Long) message.getPayload(), clientClock, clientClock);
+                    bot.writes.add(ByteBuffer.wrap(FrameCodec.encode(
+                            new TCPMessage(TCPMessage.MessageType.PONG, reading))));
+                    flush(bot, bot.channel.keyFor(selector));
+                    break;
+                case GAME_OVER:
+                case KILL_CLIENT:
+                    gamesFinished.incrementAndGet();
+                    close(bot);
+                    if (rejoin && running) {
+                        connect(new Bot(bot.number));
+                    }
+                    break;
+                default:
+                    break; // Score updates only count towards throughput
+            }
+        }
+
+        private long think(long[] range) {
+            long millis = range[0] + (range[1] > range[0] ? (long) (random.nextDouble() * (range[1] - range[0])) : 0);
+            return millis * 1_000_000L;
+        }
+
+        private void fire(Timer timer) {
+            Bot bot = timer.bot;
+            if (bot.closed || timer.questionNumber != bot.questionNumber) {
+                return; // The bot left or the room moved on while it was thinking
+            }
+            try {
+                if (timer.action == BUZZ) {
+                    buzzBuffer.clear();
+                    new UDPMessage(System.currentTimeMillis(), bot.questionNumber, bot.token).encode(buzzBuffer);
+                    buzzBuffer.flip();
+                    bot.buzzSentAt = System.nanoTime();
+                    if (bot.udp == null) {
+                        bot.udp = DatagramChannel.open();
+                    }
+                    bot.udp.send(buzzBuffer, udpAddress);
+                    buzzesSent.incrementAndGet();
+                } else {
+                    char option = pickAnswer(bot.questionNumber);
+                    bot.writes.add(ByteBuffer.wrap(FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.ANSWER,
+                            new PlayerAnswer(bot.questionNumber, option)))));
+                    bot.answerSentAt = System.nanoTime();
+                    answersSent.incrementAndGet();
+                    if (option == answers.getCorrectAnswer(bot.questionNumber)) {
+                        correctAnswers.incrementAndGet();
+                    }
+                    flush(bot, bot.channel.keyFor(selector));
+                }
+            } catch (IOException e) {
+                close(bot);
+            }
+        }
+
+        // The right option with probability accuracy, otherwise one of the others
+        private char pickAnswer(int questionNumber) {
+            char correct = answers.getCorrectAnswer(questionNumber);
+            if (correct == ' ') {
+                return (char) ('A' + random.nextInt(4)); // Not in the local bank
+            }
+            if (random.nextDouble() < accuracy) {
+                return correct;
+            }
+            char wrong = (char) ('A' + random.nextInt(3));
+            return wrong >= correct ? (char) (wrong + 1) : wrong;
+        }
+
+        private void flush(Bot bot, SelectionKey key) throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = bot.writes.peek()) != null) {
+                bot.channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                bot.writes.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void close(Bot bot) {
+            if (bot.closed) {
+                return;
+            }
+            bot.closed = true;
+            try {
+                if (bot.channel != null) {
+                    bot.channel.close();
+                }
+                if (bot.udp != null) {
+                    bot.udp.close();
+                }
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+            if (bot.connected) {
+                connected.decrementAndGet();
+            }
+            active.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package model;
+
+import java.io.Serializable;
+
+// A client's reply to one heartbeat PING, carrying the three timestamps the server needs for an NTP-style
+// estimate of the client's clock offset and the round trip: the server's send time echoed back, and the
+// client's own clock when the PING arrived and when this reply left
+public class ClockReading implements Serializable {
+    private final long serverSent;
+    private final long clientReceived;
+    private final long clientSent;
+
+    public ClockReading(long serverSent, long clientReceived, long clientSent) {
+        this.serverSent = serverSent;
+        this.clientReceived = clientReceived;
+        this.clientSent = clientSent;
+    }
+
+    public long getServerSent() {
+        return serverSent;
+    }
+
+    public long getClientReceived() {
+        return clientReceived;
+    }
+
+    public long getClientSent() {
+        return clientSent;
+    }
+
+    @Override
+    public String toString() {
+        return "ClockReading{sent=" + serverSent + ", received=" + clientReceived + ", replied=" + clientSent + "}";
+    }
+}
@@ -0,0 +1,29 @@
+package model;
+
+// Difficulty tag of a question; untagged questions have none (null)
+public enum Difficulty {
+    EASY,
+    MEDIUM,
+    HARD;
+
+    // Wire and file code: 0 means untagged
+    public int code() {
+        return ordinal() + 1;
+    }
+
+    public static Difficulty fromCode(int code) {
+        return code >= 1 && code <= values().length ? values()[code - 1] : null;
+    }
+
+    // Parses "easy", "medium" or "hard" in any case; anything else (including blank) is untagged
+    public static Difficulty parse(String value) {
+        if (value != null) {
+            for (Difficulty difficulty : values()) {
+                if (difficulty.name().equalsIgnoreCase(value.trim())) {
+                    return difficulty;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,421 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Compact binary protocol for everything sent over the TCP connection
+// Frame layout: varint body length, then the body: one version byte, one message type byte and a
+// hand-encoded payload. Integers are varints (zig-zag for values that can be negative) and strings are
+// varint-length-prefixed UTF-8. Frames are independent of each other, so unlike a long-lived
+// ObjectOutputStream nothing has to be reset and no handle table grows over a game.
+public class FrameCodec {
+    public static final int VERSION = 1;
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+    private static final int MAX_HEADER_SIZE = 5;
+
+    // Wire codes for each message type; these are part of the protocol and must never be renumbered
+    private static final byte QUESTION = 1;
+    private static final byte ACK = 2;
+    private static final byte NACK = 3;
+    private static final byte CORRECT = 4;
+    private static final byte WRONG = 5;
+    private static final byte TIMEOUT = 6;
+    private static final byte SCORE_UPDATE = 7;
+    private static final byte GAME_OVER = 8;
+    private static final byte KILL_CLIENT = 9;
+    private static final byte ELIGIBILITY = 10;
+    private static final byte ANSWER = 11;
+    private static final byte SESSION = 12;
+    private static final byte PING = 13;
+    private static final byte PONG = 14;
+
+    // SCORE_UPDATE flag bits
+    private static final int SCORES_SNAPSHOT = 1;
+    private static final int SCORES_RANKED = 2;
+
+    private FrameCodec() {
+    }
+
+    // Encodes a message into a complete frame, length header included
+    public static byte[] encode(TCPMessage message) throws IOException {
+        ByteWriter body = new ByteWriter(32);
+        body.writeByte(VERSION);
+        body.writeByte(typeCode(message.getType()));
+        writePayload(body, message);
+        checkLength(body.size());
+
+        ByteWriter frame = new ByteWriter(body.size() + MAX_HEADER_SIZE);
+        frame.writeVarint(body.size());
+        frame.write(body.buffer, 0, body.size());
+        return frame.toByteArray();
+    }
+
+    // Decodes one frame body back into the message it carried
+    public static TCPMessage decode(byte[] body, int offset, int length) throws IOException {
+        return decode(ByteBuffer.wrap(body, offset, length));
+    }
+
+    // Returns the next complete frame in the buffer and moves past it, or null (position unchanged) if
+    // the frame has not fully arrived yet; used by the non-blocking transport
+    public static TCPMessage nextFrame(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int length = 0;
+        int shift = 0;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.position(start);
+                return null;
+            }
+            byte b = buffer.get();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IOException("Malformed frame header");
+            }
+        }
+        checkLength(length);
+        if (buffer.remaining() < length) {
+            buffer.position(start);
+            return null;
+        }
+        int bodyStart = buffer.position();
+        ByteBuffer body = buffer.duplicate();
+        body.limit(bodyStart + length);
+        buffer.position(bodyStart + length);
+        return decode(body);
+    }
+
+    // Writes one frame to a blocking stream
+    public static void writeFrame(DataOutputStream out, TCPMessage message) throws IOException {
+        out.write(encode(message));
+        out.flush();
+    }
+
+    // Reads one frame from a blocking stream, waiting until it has fully arrived
+    public static TCPMessage readFrame(DataInputStream in) throws IOException {
+        int length = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift > 28) {
+                throw new IOException("Malformed frame header");
+            }
+        }
+        checkLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(body, 0, length);
+    }
+
+    // Rejects corrupt or hostile length headers before any buffer is allocated for them
+    public static void checkLength(int length) throws IOException {
+        if (length < 2 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+    }
+
+    private static TCPMessage decode(ByteBuffer body) throws IOException {
+        try {
+            int version = body.get() & 0xFF;
+            if (version != VERSION) {
+                throw new IOException("Unsupported protocol version: " + version);
+            }
+            byte code = body.get();
+            switch (code) {
+                case QUESTION:
+                    return new TCPMessage(TCPMessage.MessageType.QUESTION, readQuestion(body));
+                case SCORE_UPDATE:
+                    return new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, readScores(body));
+                case SESSION:
+                    return new TCPMessage(TCPMessage.MessageType.SESSION, body.getInt());
+                case PING:
+                    return new TCPMessage(TCPMessage.MessageType.PING, readVarlong(body));
+                case PONG:
+                    long serverSent = readVarlong(body);
+                    long clientReceived = readVarlong(body);
+                    long clientSent = readVarlong(body);
+                    return new TCPMessage(TCPMessage.MessageType.PONG, new ClockReading(serverSent, clientReceived, clientSent));
+                case ANSWER:
+                    int questionId = readVarint(body);
+                    char option = (char) (body.get() & 0xFF);
+                    return new TCPMessage(TCPMessage.MessageType.ANSWER, new PlayerAnswer(questionId, option));
+                default:
+                    return new TCPMessage(messageType(code));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated frame");
+        } catch (RuntimeException e) {
+            // Whatever else a malformed frame trips over is still just a bad frame to the transport
+            throw new IOException("Malformed frame: " + e, e);
+        }
+    }
+
+    private static void writePayload(ByteWriter out, TCPMessage message) throws IOException {
+        Object payload = message.getPayload();
+        switch (message.getType()) {
+            case QUESTION:
+                writeQuestion(out, (Question) payload);
+                break;
+            case SCORE_UPDATE:
+                writeScores(out, (ScoreUpdate) payload);
+                break;
+            case ANSWER:
+                PlayerAnswer answer = (PlayerAnswer) payload;
+                out.writeVarint(answer.getQuestionId());
+                out.writeByte(answer.getSelectedOption());
+                break;
+            case SESSION:
+                out.writeInt((Integer) payload);
+                break;
+            case PING:
+                out.writeVarlong((Long) payload);
+                break;
+            case PONG:
+                ClockReading reading = (ClockReading) payload;
+                out.writeVarlong(reading.getServerSent());
+                out.writeVarlong(reading.getClientReceived());
+                out.writeVarlong(reading.getClientSent());
+                break;
+            default:
+                // Remaining message types carry no payload
+                break;
+        }
+    }
+
+    // The correct answer stays on the server; clients only ever need the text and the options
+    private static void writeQuestion(ByteWriter out, Question question) {
+        if (question == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        out.writeVarint(question.getQuestionNumber());
+        out.writeString(question.getQuestionText());
+        String[] options = question.getOptions();
+        out.writeVarint(options.length);
+        for (String option : options) {
+            out.writeString(option);
+        }
+    }
+
+    private static Question readQuestion(ByteBuffer in) throws IOException {
+        if (in.get() == 0) {
+            return null;
+        }
+        int number = readVarint(in);
+        String text = readString(in);
+        int optionCount = readVarint(in);
+        if (optionCount < 0 || optionCount > 16) {
+            throw new IOException("Invalid option count: " + optionCount);
+        }
+        String[] options = new String[optionCount];
+        for (int i = 0; i < optionCount; i++) {
+            options[i] = readString(in);
+        }
+        return new Question(text, options, ' ', number);
+    }
+
+    // Scores are sent as a flags byte, the scoreboard version, a count and (player ID, zig-zag score) pairs;
+    // ranked windows also carry the room's player count and a rank after each pair
+    private static void writeScores(ByteWriter out, ScoreUpdate update) {
+        out.writeByte((update.isSnapshot() ? SCORES_SNAPSHOT : 0) | (update.isRanked() ? SCORES_RANKED : 0));
+        out.writeVarlong(update.getVersion());
+        if (update.isRanked()) {
+            out.writeVarint(update.getPlayerCount());
+        }
+        out.writeVarint(update.size());
+        for (int i = 0; i < update.size(); i++) {
+            out.writeVarint(update.getPlayerId(i));
+            out.writeVarint(zigZag(update.getScore(i)));
+            if (update.isRanked()) {
+                out.writeVarint(update.getRank(i));
+            }
+        }
+    }
+
+    private static ScoreUpdate readScores(ByteBuffer in) throws IOException {
+        int flags = in.get();
+        boolean ranked = (flags & SCORES_RANKED) != 0;
+        long version = readVarlong(in);
+        int playerCount = ranked ? readVarint(in) : 0;
+        int count = readVarint(in);
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Invalid score count: " + count);
+        }
+        int[] ids = new int[count];
+        int[] scores = new int[count];
+        int[] ranks = ranked ? new int[count] : null;
+        for (int i = 0; i < count; i++) {
+            ids[i] = readVarint(in);
+            scores[i] = unZigZag(readVarint(in));
+            if (ranked) {
+                ranks[i] = readVarint(in);
+            }
+        }
+        boolean snapshot = (flags & SCORES_SNAPSHOT) != 0;
+        return ranked ? new ScoreUpdate(snapshot, version, ids, scores, ranks, playerCount)
+                      : new ScoreUpdate(snapshot, version, ids, scores);
+    }
+
+    private static byte typeCode(TCPMessage.MessageType type) {
+        switch (type) {
+            case QUESTION: return QUESTION;
+            case ACK: return ACK;
+            case NACK: return NACK;
+            case CORRECT: return CORRECT;
+            case WRONG: return WRONG;
+            case TIMEOUT: return TIMEOUT;
+            case SCORE_UPDATE: return SCORE_UPDATE;
+            case GAME_OVER: return GAME_OVER;
+            case KILL_CLIENT: return KILL_CLIENT;
+            case ELIGIBILITY: return ELIGIBILITY;
+            case ANSWER: return ANSWER;
+            case SESSION: return SESSION;
+            case PING: return PING;
+            case PONG: return PONG;
+            default: throw new IllegalArgumentException("No wire code for " + type);
+        }
+    }
+
+    private static TCPMessage.MessageType messageType(byte code) throws IOException {
+        switch (code) {
+            case ACK: return TCPMessage.MessageType.ACK;
+            case NACK: return TCPMessage.MessageType.NACK;
+            case CORRECT: return TCPMessage.MessageType.CORRECT;
+            case WRONG: return TCPMessage.MessageType.WRONG;
+            case TIMEOUT: return TCPMessage.MessageType.TIMEOUT;
+            case GAME_OVER: return TCPMessage.MessageType.GAME_OVER;
+            case KILL_CLIENT: return TCPMessage.MessageType.KILL_CLIENT;
+            case ELIGIBILITY: return TCPMessage.MessageType.ELIGIBILITY;
+            default: throw new IOException("Unknown message type: " + code);
+        }
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readVarlong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static String readString(ByteBuffer in) throws IOException {
+        int length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    // Minimal growable byte buffer; avoids the synchronization and copies of ByteArrayOutputStream
+    static final class ByteWriter {
+        private byte[] buffer;
+        private int size;
+
+        ByteWriter(int capacity) {
+            buffer = new byte[Math.max(16, capacity)];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            if (size == buffer.length) {
+                return buffer;
+            }
+            byte[] copy = new byte[size];
+            System.arraycopy(buffer, 0, copy, 0, size);
+            return copy;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                byte[] larger = new byte[Math.max(buffer.length * 2, size + extra)];
+                System.arraycopy(buffer, 0, larger, 0, size);
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Checks that a malformed or hostile frame can only ever fail with an IOException, which the transports
+// handle by dropping that connection, and never with an unchecked exception
+// Usage: java -cp out model.FrameCodecTest [mutations]
+public class FrameCodecTest {
+
+    public static void main(String[] args) throws Exception {
+        int mutations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        negativeOptionCount();
+        mutatedFrames(mutations);
+        System.out.println("FrameCodecTest passed");
+    }
+
+    // A QUESTION frame whose option count decodes to -1
+    private static void negativeOptionCount() {
+        byte[] frame = {10, 1, 1, 1, 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        try {
+            FrameCodec.nextFrame(ByteBuffer.wrap(frame));
+            fail("negative option count was accepted");
+        } catch (IOException e) {
+            // Rejected as it should be
+        } catch (RuntimeException e) {
+            fail("negative option count threw " + e);
+        }
+    }
+
+    // Valid frames of every payload shape with random bytes flipped and cut short; each must decode, wait
+    // for more bytes or be rejected with an IOException
+    private static void mutatedFrames(int mutations) throws IOException {
+        byte[][] frames = {
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.QUESTION,
+                                             new Question("Which?", new String[] {"A", "B", "C", "D"}, 'A', 7))),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE,
+                                             new ScoreUpdate(true, 3, new int[] {1, 2}, new int[] {10, -5}))),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE,
+                                             new ScoreUpdate(false, 4, new int[] {1}, new int[] {10}, new int[] {1}, 2))),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.SESSION, 12345)),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.PING, 1_700_000_000_000L)),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.PONG, new ClockReading(1, 2, 3))),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.ANSWER, new PlayerAnswer(7, 'B'))),
+            FrameCodec.encode(new TCPMessage(TCPMessage.MessageType.ACK)),
+        };
+        Random random = new Random(42);
+        for (int i = 0; i < mutations; i++) {
+            byte[] frame = frames[random.nextInt(frames.length)].clone();
+            for (int flips = 1 + random.nextInt(3); flips > 0; flips--) {
+                frame[random.nextInt(frame.length)] = (byte) random.nextInt(256);
+            }
+            int length = random.nextInt(4) == 0 ? random.nextInt(frame.length + 1) : frame.length;
+            try {
+                FrameCodec.nextFrame(ByteBuffer.wrap(frame, 0, length));
+            } catch (IOException e) {
+                // Rejected as it should be
+            } catch (RuntimeException e) {
+                fail("mutated frame " + toHex(frame, length) + " threw " + e);
+            }
+        }
+    }
+
+    private static String toHex(byte[] frame, int length) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            hex.append(String.format("%02x", frame[i] & 0xFF));
+        }
+        return hex.toString();
+    }
+
+    private static void fail(String failure) {
+        System.out.println("FrameCodecTest FAILED: " + failure);
+        System.exit(1);
+    }
+}
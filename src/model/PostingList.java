@@ -0,0 +1,39 @@
+package model;
+
+import java.nio.IntBuffer;
+
+// Ascending question numbers matching one tag filter
+// Backed by one or more int runs (slices of the mapped corpus, or arrays for the in-memory bank) that are
+// read in place; a filter spanning several (category, difficulty) runs is their concatenation.
+public final class PostingList {
+    private final IntBuffer[] runs;
+    private final int[] starts; // Index of the first entry of each run within the whole list
+    private final int size;
+
+    PostingList(IntBuffer[] runs) {
+        this.runs = runs;
+        this.starts = new int[runs.length];
+        int total = 0;
+        for (int i = 0; i < runs.length; i++) {
+            starts[i] = total;
+            total += runs[i].limit();
+        }
+        this.size = total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Question number at an index; absolute reads only, so one list can be shared by every room
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Posting " + index + " of " + size);
+        }
+        int run = runs.length - 1;
+        while (starts[run] > index) {
+            run--;
+        }
+        return runs[run].get(index - starts[run]);
+    }
+}
@@ -11,6 +11,8 @@ public class Question implements Serializable {
     private String[] options;
     private char correctAnswer;
     private int questionNumber;
+    private String category;       // Optional tag, null when untagged
+    private Difficulty difficulty; // Optional tag, null when untagged
 
     // Added by Brooks
     // Modified by Eric - Uses question number embedded in Question
@@ -21,9 +23,18 @@ public class Question implements Serializable {
         this.questionNumber = questionNumber;
     }
 
+    public Question(String questionText, String[] options, char correctAnswer, int questionNumber,
+                    String category, Difficulty difficulty) {
+        this(questionText, options, correctAnswer, questionNumber);
+        this.category = category;
+        this.difficulty = difficulty;
+    }
+
     // Added by Brooks - Getters for question data
     public String getQuestionText() { return questionText; }
     public String[] getOptions() { return options; }
     public char getCorrectAnswer() { return correctAnswer; }
     public int getQuestionNumber() { return questionNumber; } // Added by Eric
+    public String getCategory() { return category; }
+    public Difficulty getDifficulty() { return difficulty; }
 }
\ No newline at end of file
@@ -3,76 +3,130 @@ package model;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 // Added by Brooks - Data storage of all of the questions for the Trivia game
+// Questions live in a compact QuestionStore: normally the compiled, memory-mapped corpus
+// (config/questions.tqb), or the same layout built on the heap if the corpus cannot be built or opened.
+// Question objects are only created when a question is asked. Questions can be tagged with a category and
+// difficulty; rooms draw from a tag filter through their own QuestionCursor, so every game gets its own
+// order without copying any Question.
 public class QuestionBank {
-    private List<Question> questions;
+    private QuestionStore store;
     private int currentQuestionIndex;
     
     public QuestionBank() {
-        questions = new ArrayList<>();
         currentQuestionIndex = 0;
-        loadQuestionsFromFile();
+        store = openCorpus();
+        if (store == null) {
+            store = loadQuestionsFromFile();
+        }
+    }
+
+    // Opens the compiled corpus, recompiling it first when questions.txt is newer or the corpus was written
+    // by an older format; null if that fails
+    private static QuestionStore openCorpus() {
+        Path source = Paths.get("config", "questions.txt");
+        Path compiled = Paths.get("config", "questions.tqb");
+        try {
+            if (Files.exists(source) && (!Files.exists(compiled) ||
+                Files.getLastModifiedTime(source).compareTo(Files.getLastModifiedTime(compiled)) > 0)) {
+                QuestionCorpus.compile(source, compiled);
+            }
+            try {
+                return QuestionCorpus.open(compiled);
+            } catch (IOException e) {
+                if (!Files.exists(source)) {
+                    throw e;
+                }
+                QuestionCorpus.compile(source, compiled);
+                return QuestionCorpus.open(compiled);
+            }
+        } catch (IOException e) {
+            System.err.println("Compiled questions unavailable, loading questions.txt instead: " + e.getMessage());
+            return null;
+        }
     }
     
     // Added by Brooks - Load questions from config file
     // Modified by Eric - start index at 1 to match the question number, added the question number as well for client use
-    private void loadQuestionsFromFile() {
+    private static QuestionStore loadQuestionsFromFile() {
         try (BufferedReader reader = new BufferedReader(
             new FileReader(Paths.get("config", "questions.txt").toFile()))) {
             
+            QuestionStore.Builder builder = QuestionStore.Builder.inMemory();
             String line;
-            int number = 1; // Start from 1
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length == 6) {
-                    questions.add(new Question(
-                        parts[0], 
-                        Arrays.copyOfRange(parts, 1, 5),
-                        parts[5].charAt(0),
-                        number // Assigns the correct question number
-                    ));
-                }
-                number++;
+                // Numbers start from 1; malformed lines are skipped as in the corpus
+                QuestionCorpus.addLine(builder, line);
             }
+            return builder.build();
         } catch (IOException e) {
             System.err.println("Error loading questions: " + e.getMessage());
-            loadDefaultQuestions();
+            return loadDefaultQuestions();
         }
     }
     
     // Added by Brooks - Fallback if file loading fails
-    private void loadDefaultQuestions() {
-        questions.add(new Question(
-            "Who holds the single-game points record?",
-            new String[]{"Michael Jordan", "Kobe Bryant", "Wilt Chamberlain", "LeBron James"},
-            'C',
-            1
-        ));
+    private static QuestionStore loadDefaultQuestions() {
+        QuestionStore.Builder builder = QuestionStore.Builder.inMemory();
+        try {
+            builder.add(
+                "Who holds the single-game points record?",
+                new String[]{"Michael Jordan", "Kobe Bryant", "Wilt Chamberlain", "LeBron James"},
+                'C',
+                null,
+                null
+            );
+            return builder.build();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory question store failed", e); // Never happens on the heap
+        }
     }
     
+    // Question numbers in a category and at a difficulty; null for either matches any
+    public PostingList select(String category, Difficulty difficulty) {
+        return store.getTags().select(category, difficulty);
+    }
+
+    public List<String> getCategories() {
+        return store.getTags().categories();
+    }
+
+    // A cursor over the questions matching a filter, drawing at most limit of them (0 for all), shuffled
+    // by the seed or in file order
+    public QuestionCursor newCursor(String category, Difficulty difficulty, int limit, boolean shuffle, long seed) {
+        return new QuestionCursor(select(category, difficulty), limit, shuffle, seed);
+    }
+
     // Added by Brooks - Getters for question fields
     public Question getNextQuestion() {
-        return hasMoreQuestions() ? questions.get(currentQuestionIndex++) : null;
+        return hasMoreQuestions() ? getQuestion(++currentQuestionIndex) : null;
     }
     
     public boolean hasMoreQuestions() {
-        return currentQuestionIndex < questions.size();
+        return currentQuestionIndex < size();
     }
     
+    // Total number of questions loaded, so rooms can walk the bank with their own cursor
+    public int size() {
+        return store.size();
+    }
+
     public int getCurrentQuestionNumber() {
         return currentQuestionIndex + 1;
     }
 
     // Modified by Eric - Makes sure to align the question number and question ID
     public Question getQuestion(int questionId) {
-        if (questionId >= 1 && questionId <= questions.size()) {
-            return questions.get(questionId - 1);
-        }
-        return null;
+        return store.getQuestion(questionId);
+    }
+
+    // Correct answer for a question, or ' ' if there is none; skips decoding the question text
+    public char getCorrectAnswer(int questionId) {
+        return store.getCorrectAnswer(questionId);
     }
 }
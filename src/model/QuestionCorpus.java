@@ -0,0 +1,168 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compiled, memory-mapped question bank
+// questions.txt is compiled once into a .tqb file holding a QuestionStore: fixed-width question records,
+// dictionary-encoded strings and the tag index. The server maps the file read-only and builds a question
+// only when it is asked for, so startup time and heap use do not grow with the number of questions; the
+// page cache holds whatever is hot.
+//
+// Layout (big-endian):
+//   header:  int magic "TQB1", int format version, int question count, int string count,
+//            int category count, int reserved, long strings offset, long arena offset, long tags offset
+//   records: QuestionStore.RECORD_SIZE bytes per question, in question number order
+//   strings: int arena offset per string plus one end offset
+//   arena:   UTF-8 bytes of every question text and distinct option
+//   tags:    category names, then a posting list per (category, difficulty) pair; see TagIndex
+//
+// Usage: java -cp out model.QuestionCorpus [questions.txt] [questions.tqb]
+public class QuestionCorpus {
+    public static final int MAGIC = 0x54514231; // "TQB1"
+    public static final int FORMAT_VERSION = 3;
+    private static final int HEADER_SIZE = 48;
+
+    private QuestionCorpus() {
+    }
+
+    // Maps a compiled corpus; only the header and the tag index are read here
+    public static QuestionStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Question corpus larger than 2 GiB: " + path);
+            }
+            if (length < HEADER_SIZE) {
+                throw new IOException("Truncated question corpus: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Not a compiled question corpus (format " + FORMAT_VERSION + "): " + path);
+            }
+            int count = data.getInt(8);
+            int strings = data.getInt(12);
+            int categories = data.getInt(16);
+            long stringsOffset = data.getLong(24);
+            long arenaOffset = data.getLong(32);
+            long tagsOffset = data.getLong(40);
+            if (count < 0 || strings < 0 || categories < 0 ||
+                stringsOffset != HEADER_SIZE + (long) count * QuestionStore.RECORD_SIZE ||
+                arenaOffset != stringsOffset + 4L * (strings + 1) || tagsOffset < arenaOffset || tagsOffset > length) {
+                throw new IOException("Corrupt question corpus header: " + path);
+            }
+            try {
+                return new QuestionStore(
+                        data.slice(HEADER_SIZE, (int) (stringsOffset - HEADER_SIZE)),
+                        data.slice((int) stringsOffset, (int) (arenaOffset - stringsOffset)),
+                        data.slice((int) arenaOffset, (int) (tagsOffset - arenaOffset)),
+                        TagIndex.read(data, (int) tagsOffset, categories));
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException("Corrupt tag section: " + path);
+            }
+        }
+    }
+
+    // Compiles a text bank (question|A|B|C|D|answer, optionally followed by |category|difficulty, per line)
+    // into the mapped format. Malformed lines are skipped, so question numbers count valid questions only.
+    // Records and strings are streamed to temporary files and the result is moved into place, so a server
+    // never maps a half-written corpus.
+    public static int compile(Path source, Path target) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Path records = Files.createTempFile(directory, "questions", ".records");
+        Path arena = Files.createTempFile(directory, "questions", ".arena");
+        Path staged = Files.createTempFile(directory, "questions", ".tqb");
+        try {
+            QuestionStore.Builder builder;
+            try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+                 OutputStream recordOut = new BufferedOutputStream(Files.newOutputStream(records));
+                 OutputStream arenaOut = new BufferedOutputStream(Files.newOutputStream(arena))) {
+                builder = new QuestionStore.Builder(recordOut, arenaOut);
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    addLine(builder, line);
+                }
+                builder.flush();
+            }
+
+            long stringsOffset = HEADER_SIZE + (long) builder.size() * QuestionStore.RECORD_SIZE;
+            long arenaOffset = stringsOffset + 4L * (builder.stringCount() + 1);
+            long tagsOffset = arenaOffset + builder.arenaSize();
+            try (OutputStream file = Files.newOutputStream(staged);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(builder.size());
+                out.writeInt(builder.stringCount());
+                out.writeInt(builder.tags().categoryCount());
+                out.writeInt(0);
+                out.writeLong(stringsOffset);
+                out.writeLong(arenaOffset);
+                out.writeLong(tagsOffset);
+                Files.copy(records, out);
+                builder.writeStringOffsets(out);
+                Files.copy(arena, out);
+                builder.tags().write(out);
+            }
+            if (Files.size(staged) > Integer.MAX_VALUE) {
+                throw new IOException("Question corpus would exceed 2 GiB");
+            }
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return builder.size();
+        } finally {
+            Files.deleteIfExists(records);
+            Files.deleteIfExists(arena);
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    // Parses one line of questions.txt into the builder; malformed lines are skipped
+    static void addLine(QuestionStore.Builder builder, String line) throws IOException {
+        List<String> fields = splitFields(line);
+        if ((fields.size() != 6 && fields.size() != 8) || fields.get(5).isEmpty()) {
+            return;
+        }
+        boolean tagged = fields.size() == 8;
+        builder.add(fields.get(0),
+                    fields.subList(1, 1 + QuestionStore.OPTIONS).toArray(new String[0]),
+                    fields.get(5).charAt(0),
+                    tagged ? fields.get(6) : null,
+                    tagged ? Difficulty.parse(fields.get(7)) : null);
+    }
+
+    // Splits on '|' without a regex
+    static List<String> splitFields(String line) {
+        List<String> fields = new ArrayList<>(8);
+        int start = 0;
+        int bar;
+        while ((bar = line.indexOf('|', start)) >= 0) {
+            fields.add(line.substring(start, bar));
+            start = bar + 1;
+        }
+        fields.add(line.substring(start));
+        return fields;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path source = Paths.get(args.length > 0 ? args[0] : "config/questions.txt");
+        Path target = Paths.get(args.length > 1 ? args[1] : "config/questions.tqb");
+        long start = System.nanoTime();
+        int count = compile(source, target);
+        System.out.println("Compiled " + count + " questions into " + target + " (" + Files.size(target) + " bytes) in " +
+                           (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,87 @@
+package model;
+
+// One room's walk through a posting list, in order or in a seeded random order that never repeats
+// The shuffle is a 4-round Feistel network over the smallest power-of-four domain that covers the list.
+// A Feistel network is a bijection, so encrypting 0, 1, 2, ... visits every index exactly once; indices
+// outside the list are encrypted again (cycle walking), which takes at most about four tries on average. A cursor
+// is a few fields, so thousands of rooms can draw independent sequences without shuffled copies.
+public class QuestionCursor {
+    private static final int ROUNDS = 4;
+
+    private final PostingList questions;
+    private final int limit;
+    private final boolean shuffle;
+    private final int halfBits;
+    private final int halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+    private int drawn = 0;
+
+    // Draws up to limit questions (0 or less means all of them); seed picks the order when shuffling
+    public QuestionCursor(PostingList questions, int limit, boolean shuffle, long seed) {
+        this.questions = questions;
+        int size = questions.size();
+        this.limit = limit > 0 ? Math.min(limit, size) : size;
+        this.shuffle = shuffle;
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+        this.halfBits = Math.max(1, (bits + 1) / 2);
+        this.halfMask = (1 << halfBits) - 1;
+        long key = seed;
+        for (int i = 0; i < ROUNDS; i++) {
+            key = mix(key + 0x9E3779B97F4A7C15L);
+            roundKeys[i] = key;
+        }
+    }
+
+    public boolean hasNext() {
+        return drawn < limit;
+    }
+
+    // Next question number, or 0 once the cursor is exhausted
+    public int next() {
+        if (!hasNext()) {
+            return 0;
+        }
+        int index = shuffle ? permute(drawn) : drawn;
+        drawn++;
+        return questions.get(index);
+    }
+
+    public int remaining() {
+        return limit - drawn;
+    }
+
+    // Questions handed out so far; a cursor with the same list and seed resumes here through skip()
+    public int drawn() {
+        return drawn;
+    }
+
+    public void skip(int count) {
+        drawn = Math.min(limit, drawn + Math.max(0, count));
+    }
+
+    private int permute(int index) {
+        int size = questions.size();
+        do {
+            index = encrypt(index);
+        } while (index >= size);
+        return index;
+    }
+
+    private int encrypt(int value) {
+        int left = value >>> halfBits;
+        int right = value & halfMask;
+        for (int round = 0; round < ROUNDS; round++) {
+            int next = left ^ ((int) mix(right ^ roundKeys[round]) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,212 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Compact, dictionary-encoded questions
+// Every question is one fixed-width record of string IDs; the strings themselves live once each in a
+// UTF-8 arena. Answer options repeat heavily across a bank (teams, players, years), so each distinct
+// option is stored a single time however many questions use it. The same layout backs the mapped corpus
+// and the in-memory fallback, and a Question object is only built when a question is actually asked.
+//
+// Record (big-endian, RECORD_SIZE bytes): int question text ID, 4 x int option ID, byte correct answer,
+// byte difficulty code (0 = untagged), u16 category ID (0 = untagged)
+// Strings: int arena offset per string ID plus one end offset, then the arena of UTF-8 bytes
+public final class QuestionStore {
+    public static final int OPTIONS = 4;
+    static final int RECORD_SIZE = 4 * (1 + OPTIONS) + 4;
+
+    private final ByteBuffer records;
+    private final ByteBuffer stringOffsets;
+    private final ByteBuffer arena;
+    private final TagIndex tags;
+    private final int count;
+
+    QuestionStore(ByteBuffer records, ByteBuffer stringOffsets, ByteBuffer arena, TagIndex tags) {
+        this.records = records;
+        this.stringOffsets = stringOffsets;
+        this.arena = arena;
+        this.tags = tags;
+        this.count = records.limit() / RECORD_SIZE;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Builds question number n (1-based), or returns null if there is no such question
+    // Uses absolute reads only, so any number of threads can share one store
+    public Question getQuestion(int number) {
+        if (number < 1 || number > count) {
+            return null;
+        }
+        int record = (number - 1) * RECORD_SIZE;
+        String text = string(records.getInt(record));
+        String[] options = new String[OPTIONS];
+        for (int i = 0; i < OPTIONS; i++) {
+            options[i] = string(records.getInt(record + 4 * (1 + i)));
+        }
+        int tail = record + 4 * (1 + OPTIONS);
+        char correct = (char) (records.get(tail) & 0xFF);
+        Difficulty difficulty = Difficulty.fromCode(records.get(tail + 1));
+        String category = tags.categoryName(records.getShort(tail + 2) & 0xFFFF);
+        return new Question(text, options, correct, number, category, difficulty);
+    }
+
+    // Correct answer of question n without touching any strings, or ' ' if there is no such question
+    public char getCorrectAnswer(int number) {
+        if (number < 1 || number > count) {
+            return ' ';
+        }
+        return (char) (records.get((number - 1) * RECORD_SIZE + 4 * (1 + OPTIONS)) & 0xFF);
+    }
+
+    TagIndex getTags() {
+        return tags;
+    }
+
+    // Heap bytes held by this store when it is not mapped; used by the footprint benchmark
+    public long heapBytes() {
+        long total = 0;
+        for (ByteBuffer buffer : new ByteBuffer[] {records, stringOffsets, arena}) {
+            if (buffer.hasArray()) {
+                total += buffer.array().length;
+            }
+        }
+        return total;
+    }
+
+    private String string(int id) {
+        int start = stringOffsets.getInt(id * 4);
+        int end = stringOffsets.getInt(id * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        arena.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Appends questions as records and strings, streaming both to the given outputs
+    // Only the option dictionary and the string offsets are kept in memory, so a corpus of millions of
+    // questions compiles without holding its text on the heap.
+    public static final class Builder {
+        private final DataOutputStream records;
+        private final DataOutputStream arena;
+        private final ByteArrayOutputStream recordBytes; // Set when building in memory
+        private final ByteArrayOutputStream arenaBytes;
+        private final Map<String, Integer> optionIds = new HashMap<>();
+        private final TagIndex.Builder tags = new TagIndex.Builder();
+        private int[] offsets = new int[1024];
+        private int strings = 0;
+        private long arenaSize = 0;
+        private int count = 0;
+
+        Builder(OutputStream records, OutputStream arena) {
+            this(records, arena, null, null);
+        }
+
+        private Builder(OutputStream records, OutputStream arena, ByteArrayOutputStream recordBytes,
+                        ByteArrayOutputStream arenaBytes) {
+            this.records = new DataOutputStream(records);
+            this.arena = new DataOutputStream(arena);
+            this.recordBytes = recordBytes;
+            this.arenaBytes = arenaBytes;
+        }
+
+        // A builder whose store lives on the heap; finish with build()
+        public static Builder inMemory() {
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            ByteArrayOutputStream arenaBytes = new ByteArrayOutputStream();
+            return new Builder(recordBytes, arenaBytes, recordBytes, arenaBytes);
+        }
+
+        // Adds a question and returns its number
+        public int add(String text, String[] options, char correct, String category, Difficulty difficulty)
+                throws IOException {
+            if (options.length != OPTIONS) {
+                throw new IOException("Questions need exactly " + OPTIONS + " options");
+            }
+            int categoryId = tags.categoryId(category);
+            if (categoryId > 0xFFFF) {
+                throw new IOException("More than 65535 categories");
+            }
+            records.writeInt(newString(text)); // Question texts are nearly always unique, so they skip the dictionary
+            for (String option : options) {
+                Integer id = optionIds.get(option);
+                if (id == null) {
+                    id = newString(option);
+                    optionIds.put(option, id);
+                }
+                records.writeInt(id);
+            }
+            records.writeByte(correct);
+            records.writeByte(difficulty != null ? difficulty.code() : 0);
+            records.writeShort(categoryId);
+            count++;
+            tags.add(count, categoryId, difficulty);
+            return count;
+        }
+
+        private int newString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (arenaSize + bytes.length > Integer.MAX_VALUE) {
+                throw new IOException("Question strings exceed 2 GiB");
+            }
+            if (strings + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[strings] = (int) arenaSize;
+            arena.write(bytes);
+            arenaSize += bytes.length;
+            offsets[strings + 1] = (int) arenaSize;
+            return strings++;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        int stringCount() {
+            return strings;
+        }
+
+        long arenaSize() {
+            return arenaSize;
+        }
+
+        TagIndex.Builder tags() {
+            return tags;
+        }
+
+        void flush() throws IOException {
+            records.flush();
+            arena.flush();
+        }
+
+        // String offsets in the layout QuestionStore reads: one int per string plus the end offset
+        void writeStringOffsets(DataOutputStream out) throws IOException {
+            for (int i = 0; i <= strings; i++) {
+                out.writeInt(offsets[i]);
+            }
+        }
+
+        public QuestionStore build() throws IOException {
+            if (recordBytes == null) {
+                throw new IllegalStateException("Builder streams to files; open the compiled corpus instead");
+            }
+            flush();
+            ByteBuffer stringOffsets = ByteBuffer.allocate(4 * (strings + 1));
+            for (int i = 0; i <= strings; i++) {
+                stringOffsets.putInt(offsets[i]);
+            }
+            stringOffsets.flip();
+            return new QuestionStore(ByteBuffer.wrap(recordBytes.toByteArray()), stringOffsets,
+                                     ByteBuffer.wrap(arenaBytes.toByteArray()), tags.build());
+        }
+    }
+}
@@ -1,21 +1,81 @@
 package model;
 
-import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
 
 // Added by Brooks - Score update message class
-public class ScoreUpdate implements Serializable {
-    private final int score;
-    
-    public ScoreUpdate(int score) {
-        this.score = score;
+// Carries either a full scoreboard snapshot or only the entries that changed since the version the
+// client last received; the client replaces its table on a snapshot and merges a delta into it.
+// In large rooms the server sends a ranked window instead: the top players plus the receiving player's
+// neighbours, each with its rank, so the client can show its position without holding the whole table.
+public class ScoreUpdate {
+    private final boolean snapshot;
+    private final long version;
+    private final int[] playerIds;
+    private final int[] scores;
+    private final int[] ranks;       // 1-based rank of each entry, or null when the update is not ranked
+    private final int playerCount;   // Players in the whole room, for ranked windows
+
+    public ScoreUpdate(boolean snapshot, long version, int[] playerIds, int[] scores) {
+        this(snapshot, version, playerIds, scores, null, playerIds.length);
+    }
+
+    public ScoreUpdate(boolean snapshot, long version, int[] playerIds, int[] scores, int[] ranks, int playerCount) {
+        this.snapshot = snapshot;
+        this.version = version;
+        this.playerIds = playerIds;
+        this.scores = scores;
+        this.ranks = ranks;
+        this.playerCount = playerCount;
     }
-    
-    public int getScore() {
-        return score;
+
+    // A ranked window lists entries in rank order; it always replaces whatever the client showed before
+    public boolean isRanked() {
+        return ranks != null;
+    }
+
+    public int getRank(int index) {
+        return ranks[index];
     }
-    
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return playerIds.length;
+    }
+
+    public int getPlayerId(int index) {
+        return playerIds[index];
+    }
+
+    public int getScore(int index) {
+        return scores[index];
+    }
+
+    // Applies this update to a client's copy of the scoreboard
+    public void applyTo(Map<Integer, Integer> table) {
+        if (snapshot) {
+            table.clear();
+        }
+        for (int i = 0; i < playerIds.length; i++) {
+            table.put(playerIds[i], scores[i]);
+        }
+    }
+
     @Override
     public String toString() {
-        return "ScoreUpdate{score=" + score + "}";
+        return "ScoreUpdate{" + (isRanked() ? "window" : snapshot ? "snapshot" : "delta") + " v" + version +
+               ", players=" + Arrays.toString(playerIds) + ", scores=" + Arrays.toString(scores) +
+               (isRanked() ? ", ranks=" + Arrays.toString(ranks) + " of " + playerCount : "") + "}";
     }
-}
\ No newline at end of file
+}
@@ -18,7 +18,11 @@ public class TCPMessage implements Serializable {
         SCORE_UPDATE, // Broadcast updated scores
         GAME_OVER,    // Signals end of game
         KILL_CLIENT,  // Kills the client
-        ELIGIBILITY   // Allow the client to poll
+        ELIGIBILITY,  // Allow the client to poll
+        ANSWER,       // Client submits a PlayerAnswer
+        SESSION,      // Server hands the client the session token to put in its buzzes
+        PING,         // Server heartbeat carrying a timestamp from the server's clock
+        PONG          // Client's immediate reply to a PING: a ClockReading echoing its timestamp
     }
     
     private final MessageType type;  // Added by Brooks - The message type
@@ -0,0 +1,165 @@
+package model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Posting lists of question numbers for every (category, difficulty) pair
+// Category 0 and difficulty code 0 stand for "untagged". A filter on a category, a difficulty, both or
+// neither is the concatenation of the matching runs, so no list is ever merged or copied per query.
+final class TagIndex {
+    private static final int DIFFICULTY_CODES = Difficulty.values().length + 1;
+
+    private final String[] categoryNames; // Index is the category ID; entry 0 is the untagged category
+    private final IntBuffer[] runs;       // Index is categoryId * DIFFICULTY_CODES + difficulty code
+
+    private TagIndex(String[] categoryNames, IntBuffer[] runs) {
+        this.categoryNames = categoryNames;
+        this.runs = runs;
+    }
+
+    // Questions matching the filter; a null category or difficulty matches anything
+    PostingList select(String category, Difficulty difficulty) {
+        List<IntBuffer> selected = new ArrayList<>();
+        for (int id = 0; id < categoryNames.length; id++) {
+            if (category != null && (id == 0 || !categoryNames[id].equalsIgnoreCase(category))) {
+                continue;
+            }
+            for (int code = 0; code < DIFFICULTY_CODES; code++) {
+                if (difficulty != null && code != difficulty.code()) {
+                    continue;
+                }
+                IntBuffer run = runs[id * DIFFICULTY_CODES + code];
+                if (run.limit() > 0) {
+                    selected.add(run);
+                }
+            }
+        }
+        return new PostingList(selected.toArray(new IntBuffer[0]));
+    }
+
+    // Name of a category ID, or null for the untagged category
+    String categoryName(int id) {
+        return id > 0 && id < categoryNames.length ? categoryNames[id] : null;
+    }
+
+    List<String> categories() {
+        return Arrays.asList(categoryNames).subList(1, categoryNames.length);
+    }
+
+    // Reads the tag section of a mapped corpus in place: category names, then for every run a count
+    // followed by that many ints. Returns the index; the runs stay slices of the mapping.
+    static TagIndex read(ByteBuffer data, int offset, int categoryCount) {
+        String[] names = new String[categoryCount + 1];
+        names[0] = "";
+        int position = offset;
+        for (int id = 1; id <= categoryCount; id++) {
+            int length = data.getShort(position) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            data.get(position + 2, bytes);
+            names[id] = new String(bytes, StandardCharsets.UTF_8);
+            position += 2 + length;
+        }
+        IntBuffer[] runs = new IntBuffer[names.length * DIFFICULTY_CODES];
+        for (int i = 0; i < runs.length; i++) {
+            int count = data.getInt(position);
+            position += Integer.BYTES;
+            runs[i] = data.slice(position, count * Integer.BYTES).asIntBuffer();
+            position += count * Integer.BYTES;
+        }
+        return new TagIndex(names, runs);
+    }
+
+    // Collects postings while a bank is compiled or loaded into memory
+    static final class Builder {
+        private final Map<String, Integer> categoryIds = new HashMap<>();
+        private final List<String> names = new ArrayList<>(List.of(""));
+        private final List<int[]> runs = new ArrayList<>();
+        private int[] runSizes = new int[DIFFICULTY_CODES * 8];
+
+        Builder() {
+            addRuns();
+        }
+
+        // Returns the ID for a category name, assigning a new one the first time; blank means untagged
+        int categoryId(String category) {
+            if (category == null || category.isBlank()) {
+                return 0;
+            }
+            String key = category.trim().toLowerCase();
+            Integer id = categoryIds.get(key);
+            if (id == null) {
+                id = names.size();
+                categoryIds.put(key, id);
+                names.add(key);
+                addRuns();
+            }
+            return id;
+        }
+
+        void add(int questionNumber, int categoryId, Difficulty difficulty) {
+            int run = categoryId * DIFFICULTY_CODES + (difficulty != null ? difficulty.code() : 0);
+            int[] postings = runs.get(run);
+            int size = runSizes[run];
+            if (size == postings.length) {
+                postings = Arrays.copyOf(postings, Math.max(8, size * 2));
+                runs.set(run, postings);
+            }
+            postings[size] = questionNumber;
+            runSizes[run] = size + 1;
+        }
+
+        int categoryCount() {
+            return names.size() - 1;
+        }
+
+        String categoryName(int id) {
+            return names.get(id);
+        }
+
+        TagIndex build() {
+            IntBuffer[] built = new IntBuffer[runs.size()];
+            for (int i = 0; i < built.length; i++) {
+                built[i] = IntBuffer.wrap(runs.get(i), 0, runSizes[i]).slice();
+            }
+            return new TagIndex(names.toArray(new String[0]), built);
+        }
+
+        // Writes the tag section in the layout read() expects; returns the bytes written
+        long write(DataOutputStream out) throws IOException {
+            long written = 0;
+            for (int id = 1; id < names.size(); id++) {
+                byte[] bytes = names.get(id).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+                written += 2 + bytes.length;
+            }
+            for (int i = 0; i < runs.size(); i++) {
+                int[] postings = runs.get(i);
+                int size = runSizes[i];
+                out.writeInt(size);
+                for (int j = 0; j < size; j++) {
+                    out.writeInt(postings[j]);
+                }
+                written += Integer.BYTES * (1L + size);
+            }
+            return written;
+        }
+
+        private void addRuns() {
+            for (int code = 0; code < DIFFICULTY_CODES; code++) {
+                runs.add(new int[0]);
+            }
+            if (runs.size() > runSizes.length) {
+                runSizes = Arrays.copyOf(runSizes, runSizes.length * 2);
+            }
+        }
+    }
+}
@@ -1,53 +1,99 @@
 package model;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-
-public class UDPMessage implements Serializable {
-    
-    // Added by Eric - Data Fields of timestamp and source ip
-    private static final long serialVersionUID = 1L;
-    private long timestamp;
-    private String ip;
-
-    // Added by Eric - UDP Message Protocol Class
-    public UDPMessage(long timestamp, String ip) {
+import java.nio.ByteBuffer;
+
+// Added by Eric - UDP Message Protocol Class
+// Buzzes are sent as a fixed 20 byte frame so the server can check and read them in place without
+// decoding an object. The sender's address comes from the datagram itself.
+//   0  magic     2 bytes  'T' 'B'
+//   2  version   1 byte
+//   3  type      1 byte   1 = buzz
+//   4  token     4 bytes  session token, 0 if the client has none
+//   8  question  4 bytes  question number the player buzzed on
+//  12  timestamp 8 bytes  client clock in milliseconds when Poll was pressed
+public class UDPMessage {
+    public static final int SIZE = 20;
+    public static final short MAGIC = 0x5442;
+    public static final byte VERSION = 1;
+    public static final byte TYPE_BUZZ = 1;
+
+    private static final int TOKEN_OFFSET = 4;
+    private static final int QUESTION_OFFSET = 8;
+    private static final int TIMESTAMP_OFFSET = 12;
+
+    // Added by Eric - Data Fields of timestamp and buzzed question
+    private final long timestamp;
+    private final int questionNumber;
+    private final int token;
+
+    public UDPMessage(long timestamp, int questionNumber, int token) {
         this.timestamp = timestamp;
-        this.ip = ip;
+        this.questionNumber = questionNumber;
+        this.token = token;
     }
 
-    // Added by Eric - Getter for the timestamp and the client IP
+    // Added by Eric - Getter for the timestamp
     public long getTimestamp() {
         return timestamp;
     }
 
-    public String getClientIP() {
-        return ip;
+    public int getQuestionNumber() {
+        return questionNumber;
     }
 
-    // Added by Eric - Used to decode the UDP message from byte array to object using serilization
-    public static UDPMessage decode(byte[] data) {
-        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data))) {
-            return (UDPMessage) ois.readObject();
-        } catch (Exception e) {
-            System.err.println("Error decoding message: " + e.getMessage());
-            return null;
-        }
+    public int getToken() {
+        return token;
     }
 
-    // Added by Eric - Used to encode the UDP message to a byte array using serialization
+    // Writes the frame at the buffer's position, so a sender can reuse one buffer for every press
+    public void encode(ByteBuffer buffer) {
+        buffer.putShort(MAGIC)
+              .put(VERSION)
+              .put(TYPE_BUZZ)
+              .putInt(token)
+              .putInt(questionNumber)
+              .putLong(timestamp);
+    }
+
+    // Added by Eric - Used to encode the UDP message to a byte array
     public byte[] encode() {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-            objectOutputStream.writeObject(this);
-            return byteArrayOutputStream.toByteArray();
-        } catch (IOException e) {
-            System.err.println("Error encoding message: " + e.getMessage());
-            return new byte[0];
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        encode(buffer);
+        return buffer.array();
+    }
+
+    // Added by Eric - Used to decode the UDP message from a received frame; null if it is not a valid buzz
+    public static UDPMessage decode(ByteBuffer frame) {
+        if (!isBuzz(frame)) {
+            return null;
         }
+        return new UDPMessage(readTimestamp(frame), readQuestionNumber(frame), readToken(frame));
+    }
+
+    // Checks a received frame in place: right size, magic, version and type
+    // The accessors below read absolute offsets from the frame's position and never allocate
+    public static boolean isBuzz(ByteBuffer frame) {
+        int start = frame.position();
+        return frame.remaining() == SIZE &&
+               frame.getShort(start) == MAGIC &&
+               frame.get(start + 2) == VERSION &&
+               frame.get(start + 3) == TYPE_BUZZ;
+    }
+
+    public static int readToken(ByteBuffer frame) {
+        return frame.getInt(frame.position() + TOKEN_OFFSET);
+    }
+
+    public static int readQuestionNumber(ByteBuffer frame) {
+        return frame.getInt(frame.position() + QUESTION_OFFSET);
+    }
+
+    public static long readTimestamp(ByteBuffer frame) {
+        return frame.getLong(frame.position() + TIMESTAMP_OFFSET);
+    }
+
+    @Override
+    public String toString() {
+        return "UDPMessage{q=" + questionNumber + ", token=" + token + ", timestamp=" + timestamp + "}";
     }
 }
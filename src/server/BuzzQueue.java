@@ -0,0 +1,119 @@
+package server;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Buzz order for a single room, fed by the shared UDP listener and drained by the room's game loop
+// Buzzes are ordered by when the player pressed (the client timestamp corrected by its clock offset, see
+// ClientConnection.pressTime), ties broken by arrival, so a far-away player is not beaten by a near one who
+// pressed later. The listener only appends to a lock-free queue; the room moves arrivals into a heap when
+// it asks for the next buzzer, so no lock is taken per packet.
+// Every question opens a new epoch. A client may buzz once per epoch, checked against the epoch stamp on
+// its connection, so dedup costs the same whatever the queue length. Entries carry the epoch they were
+// accepted in, so a buzz racing with clear() can never leak into the next question.
+// The epoch and the number of buzzes in it share one atomic word, so a buzz is only counted while its epoch
+// is current and clear() moves to the next epoch and zeroes the count in one step.
+public class BuzzQueue {
+
+    private static final class Buzz implements Comparable<Buzz> {
+        final int epoch;
+        final int clientId;
+        final long pressedAt;
+        final int arrival;
+
+        Buzz(int epoch, int clientId, long pressedAt, int arrival) {
+            this.epoch = epoch;
+            this.clientId = clientId;
+            this.pressedAt = pressedAt;
+            this.arrival = arrival;
+        }
+
+        @Override
+        public int compareTo(Buzz other) {
+            int byPress = Long.compare(pressedAt, other.pressedAt);
+            return byPress != 0 ? byPress : Integer.compare(arrival, other.arrival);
+        }
+    }
+
+    private final Queue<Buzz> arrivals = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Buzz> order = new PriorityQueue<>(); // Touched only by the room, under its lock
+    private final AtomicLong state = new AtomicLong(1L << 32); // Epoch in the high half, buzz count in the low half
+    private volatile long cutoff = Long.MAX_VALUE;
+
+    // Adds the client to the queue unless they already buzzed for this question
+    // pressedAt is the game clock time of the press; equal times keep arrival order
+    public boolean addBuzz(ClientConnection client, long pressedAt) {
+        long seen = state.get();
+        int current = epochOf(seen);
+        if (!client.markBuzzed(current)) {
+            return false;
+        }
+        // Counted only if the question has not moved on since; a buzz that lost the race to clear() is stale
+        while (!state.compareAndSet(seen, seen + 1)) {
+            seen = state.get();
+            if (epochOf(seen) != current) {
+                return false;
+            }
+        }
+        client.setBuzzedAt(System.nanoTime());
+        arrivals.add(new Buzz(current, client.getClientId(), pressedAt, (int) seen + 1));
+        return true;
+    }
+
+    // Whether the client already buzzed for this question; addBuzz checks again atomically
+    public boolean hasBuzzed(ClientConnection client) {
+        return client.getBuzzEpoch() == epochOf(state.get());
+    }
+
+    // Whether the given epoch is still the current question's
+    public boolean isCurrentEpoch(int epoch) {
+        return epochOf(state.get()) == epoch;
+    }
+
+    // Only presses made by the given time can still win; later ones arriving during the settle window are ignored
+    public void closeAt(long time) {
+        cutoff = time;
+    }
+
+    // Resets the queue after the game loop for one question finishes
+    public void clear() {
+        state.getAndUpdate(previous -> (long) (epochOf(previous) + 1) << 32);
+        arrivals.clear();
+        order.clear();
+        cutoff = Long.MAX_VALUE;
+    }
+
+    // Returns the ID of the earliest press still waiting, or null if nobody is waiting
+    public Integer getFirstBuzzedClient() {
+        int current = epochOf(state.get());
+        Buzz buzz;
+        while ((buzz = arrivals.poll()) != null) {
+            if (buzz.epoch == current && buzz.pressedAt <= cutoff) {
+                order.add(buzz);
+            }
+        }
+        buzz = order.poll();
+        return buzz != null ? buzz.clientId : null;
+    }
+
+    // Number of distinct clients that buzzed since the last clear
+    public int getBuzzCount() {
+        return (int) state.get();
+    }
+
+    public boolean isEmpty() {
+        return arrivals.isEmpty() && order.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        long current = state.get();
+        return "BuzzQueue{epoch=" + epochOf(current) + ", buzzes=" + (int) current + "}";
+    }
+
+    private static int epochOf(long state) {
+        return (int) (state >>> 32);
+    }
+}
@@ -0,0 +1,157 @@
+package server;
+
+import java.net.InetSocketAddress;
+
+// Per-sender token buckets checked before a datagram is even looked at, so a stuck or hostile client
+// spamming buzzes costs two table probes per packet instead of a decode, a session lookup and a trip into
+// its room. Nothing in the datagram is trusted: every source (address and port) may send burst buzzes at
+// once and perSecond after that, and every address, whichever ports it uses, addressBurst and
+// addressPerSecond, which leaves room for players sharing a NAT address but stops one host from getting
+// a fresh bucket by changing its source port.
+// The buckets live in an open-addressing table of parallel primitive arrays with linear probing, so a
+// packet allocates nothing. Its size is fixed: a new sender only takes over a bucket idle long enough to
+// have refilled, which loses nothing; when the probe window has none, the sender is counted against one
+// shared overflow bucket, so a flood of new senders can neither reset nor push out anyone's bucket. One
+// limiter belongs to one UDPThread and is not thread-safe; with SO_REUSEPORT a sender always lands on the
+// same receiver, so each sender has exactly one bucket.
+public class BuzzRateLimiter {
+    private static final int MAX_PROBES = 8;
+    private static final long SCALE = 1_000_000L; // Tokens are counted in millionths
+    private static final long ADDRESS_KEY = 1L << 62; // Tells an address bucket from a source bucket
+
+    // One kind of bucket: how many tokens it holds and how fast they come back
+    private static final class Limit {
+        final long capacity;
+        final long nanosPerToken;
+        final long refillNanos; // Idle time after which the bucket is full again
+
+        Limit(int perSecond, int burst) {
+            capacity = Math.max(1, burst) * SCALE;
+            nanosPerToken = Math.max(1, 1_000_000_000L / Math.max(1, perSecond));
+            refillNanos = nanosPerToken * Math.max(1, burst);
+        }
+    }
+
+    private final long[] keys;        // 0 marks an empty slot
+    private final long[] tokens;      // Scaled by SCALE
+    private final long[] refilledAt;  // System.nanoTime() of the last refill
+    private final int mask;
+    private final Limit source;
+    private final Limit address;
+    private final long idleNanos;     // A bucket idle this long is full and can be handed to a new sender
+    private final long[] overflow;    // Tokens and refill time of the bucket shared by senders with no slot
+    private int used = 0;
+    private long overflowed = 0;
+
+    // tableSize is rounded up to a power of two
+    public BuzzRateLimiter(int perSecond, int burst, int addressPerSecond, int addressBurst, int tableSize) {
+        int size = Integer.highestOneBit(Math.max(MAX_PROBES, Math.min(tableSize, 1 << 24)) * 2 - 1);
+        keys = new long[size];
+        tokens = new long[size];
+        refilledAt = new long[size];
+        mask = size - 1;
+        source = new Limit(perSecond, burst);
+        address = new Limit(addressPerSecond, addressBurst);
+        idleNanos = Math.max(source.refillNanos, address.refillNanos);
+        overflow = new long[] {source.capacity, 0};
+    }
+
+    // Takes one token from the sender's source and address buckets; false means the packet should be
+    // dropped unread
+    public boolean tryAcquire(InetSocketAddress sender, long now) {
+        // The top bit keeps every key non-zero; addresses whose hashes collide share buckets, which only makes
+        // their limit stricter
+        long hash = sender.getAddress().hashCode() & 0xFFFFFFFFL;
+        int sourceSlot = slotFor(Long.MIN_VALUE | hash << 16 | sender.getPort(), now);
+        int addressSlot = slotFor(Long.MIN_VALUE | ADDRESS_KEY | hash, now);
+        if (!hasToken(sourceSlot, source, now) || !hasToken(addressSlot, address, now)) {
+            return false;
+        }
+        take(sourceSlot);
+        take(addressSlot);
+        return true;
+    }
+
+    // Finds or claims the sender's slot; -1 means it has to share the overflow bucket
+    private int slotFor(long key, long now) {
+        int home = (int) mix(key) & mask;
+        int stalest = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int index = (home + probe) & mask;
+            if (keys[index] == key) {
+                return index;
+            }
+            if (keys[index] == 0) {
+                used++;
+                return claim(index, key, now);
+            }
+            if (now - refilledAt[index] >= idleNanos && (stalest < 0 || refilledAt[index] - refilledAt[stalest] < 0)) {
+                stalest = index;
+            }
+        }
+        if (stalest >= 0) {
+            return claim(stalest, key, now);
+        }
+        overflowed++;
+        return -1;
+    }
+
+    private int claim(int index, long key, long now) {
+        keys[index] = key;
+        tokens[index] = Long.MAX_VALUE; // Filled to its limit's capacity by the first refill
+        refilledAt[index] = now;
+        return index;
+    }
+
+    // Refills the bucket for the time since it was last used and says whether a whole token is left
+    private boolean hasToken(int slot, Limit limit, long now) {
+        if (slot < 0) {
+            overflow[0] = refill(overflow[0], overflow[1], source, now);
+            overflow[1] = now;
+            return overflow[0] >= SCALE;
+        }
+        tokens[slot] = refill(tokens[slot], refilledAt[slot], limit, now);
+        refilledAt[slot] = now;
+        return tokens[slot] >= SCALE;
+    }
+
+    private static long refill(long available, long since, Limit limit, long now) {
+        long elapsed = now - since;
+        if (elapsed >= limit.refillNanos || available > limit.capacity) {
+            return limit.capacity;
+        }
+        return elapsed > 0 ? Math.min(limit.capacity, available + elapsed * SCALE / limit.nanosPerToken) : available;
+    }
+
+    private void take(int slot) {
+        if (slot < 0) {
+            overflow[0] -= SCALE;
+        } else {
+            tokens[slot] -= SCALE;
+        }
+    }
+
+    // Slots holding a source or an address, for sizing the table
+    public int getUsed() {
+        return used;
+    }
+
+    // Packets from senders that found no free or idle slot and were counted against the overflow bucket
+    public long getOverflowed() {
+        return overflowed;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    // Finalizer of MurmurHash3, so neighbouring addresses and ports spread over the table
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93e34e53ba9L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
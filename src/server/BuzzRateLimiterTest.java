@@ -0,0 +1,93 @@
+package server;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import model.UDPMessage;
+
+// Checks that nothing a sender puts in its datagrams gets it past the buzz rate limit: not a new token in
+// every frame, not a new source port, and not a flood of new senders aimed at pushing a bucket out
+// Usage: java -cp out server.BuzzRateLimiterTest
+public class BuzzRateLimiterTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        rotatingTokens();
+        rotatingPorts();
+        floodKeepsBusyBuckets();
+        System.out.println("BuzzRateLimiterTest passed");
+        System.exit(0);
+    }
+
+    // One sender puts a different unknown token in every frame; it still gets burst frames and then one
+    // every 1/perSecond, and only those are looked up
+    private static void rotatingTokens() throws Exception {
+        ServerTrivia server = new ServerTrivia(new ServerConfig().set("wal.enabled", "false"));
+        UDPThread receiver = new UDPThread(null, server, 0, new BuzzRateLimiter(20, 10, 1000, 500, 64));
+        InetSocketAddress sender = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 40000);
+        long now = 0;
+        for (int token = 1; token <= 100; token++) {
+            receiver.onDatagram(buzz(token), sender, now);
+        }
+        check(receiver.getRejected() == 10 && receiver.getRateLimited() == 90,
+              "burst of 100 rotating tokens: " + receiver.getRejected() + " looked up, " +
+              receiver.getRateLimited() + " limited, expected 10 and 90");
+        now += SECOND / 4;
+        for (int token = 101; token <= 200; token++) {
+            receiver.onDatagram(buzz(token), sender, now);
+        }
+        check(receiver.getRejected() == 15, "250 ms later " + (receiver.getRejected() - 10) +
+              " rotating tokens were looked up, expected 5");
+    }
+
+    // One host sends every frame from a new source port; its address bucket holds it to addressBurst
+    private static void rotatingPorts() throws Exception {
+        BuzzRateLimiter limiter = new BuzzRateLimiter(20, 10, 100, 50, 1024);
+        InetAddress host = InetAddress.getByName("10.0.0.2");
+        int accepted = 0;
+        for (int port = 1; port <= 1000; port++) {
+            if (limiter.tryAcquire(new InetSocketAddress(host, port), 0)) {
+                accepted++;
+            }
+        }
+        check(accepted == 50, accepted + " of 1000 frames from rotating ports accepted, expected 50");
+    }
+
+    // A sender that has used up its burst keeps its empty bucket however many new senders arrive, and the
+    // newcomers that find no slot share a single bucket
+    private static void floodKeepsBusyBuckets() throws Exception {
+        BuzzRateLimiter limiter = new BuzzRateLimiter(20, 10, 1000, 500, 16);
+        InetSocketAddress player = new InetSocketAddress(InetAddress.getByName("10.0.0.3"), 40000);
+        long now = 0;
+        while (limiter.tryAcquire(player, now)) {
+            now += 1000;
+        }
+        int flooded = 0;
+        for (int i = 0; i < 10_000; i++) {
+            InetAddress address = InetAddress.getByAddress(new byte[] {(byte) 172, 16, (byte) (i >> 8), (byte) i});
+            if (limiter.tryAcquire(new InetSocketAddress(address, 1024 + i), now)) {
+                flooded++;
+            }
+            now += 1000;
+        }
+        check(!limiter.tryAcquire(player, now), "player's empty bucket was reset by a flood of new senders");
+        check(limiter.getOverflowed() > 0, "flood never reached the overflow bucket");
+        int slots = limiter.getCapacity();
+        check(flooded <= slots * 10 + 10, flooded + " flood frames accepted by a " + slots + " slot table");
+    }
+
+    private static ByteBuffer buzz(int token) {
+        ByteBuffer frame = ByteBuffer.allocate(UDPMessage.SIZE);
+        new UDPMessage(System.currentTimeMillis(), 1, token).encode(frame);
+        frame.flip();
+        return frame;
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            System.out.println("BuzzRateLimiterTest FAILED: " + failure);
+            System.exit(1);
+        }
+    }
+}
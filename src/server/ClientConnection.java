@@ -0,0 +1,292 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.ClockReading;
+import model.PlayerAnswer;
+import model.Question;
+import model.TCPMessage;
+
+// One connected player as seen by the game loop, independent of the transport carrying its messages
+// ClientThread serves a connection with a blocking thread, NioConnection with a shared selector loop
+public abstract class ClientConnection {
+    // How recently the client was heard from, as judged by its room's heartbeat
+    public enum Liveness { ALIVE, SUSPECT, DEAD }
+
+    protected final int id;                 // Added by Brooks - Unique client identifier
+    protected final ServerTrivia server;    // Added by Brooks - Reference to main server
+    protected final GameRoom room;          // Room this client plays in
+    protected volatile boolean isActive = true; // Added by Brooks - Connection status flag
+    private volatile PlayerAnswer answer = null; // Added by Eric - safe player answer
+    private volatile boolean disconnected = false;
+    private final int sessionToken;            // Identifies this client's buzzes, see SessionTable
+    private final AtomicInteger buzzEpoch = new AtomicInteger(); // Last BuzzQueue epoch this client buzzed in
+    protected final OutboundQueue outbound;    // Frames waiting to be written by the transport
+    private volatile long scoreVersion = -1;   // Scoreboard version this client has been sent, -1 if none
+    private int scoreSlot = -1;                // This player's slot in the room's score table
+    private volatile long buzzedAt;            // System.nanoTime() of this client's last queued buzz
+    private volatile long lastHeard;           // Game clock reading of the last frame received
+    private volatile long roundTripMillis = -1; // Smoothed heartbeat round trip, -1 until the first PONG
+    private volatile Liveness liveness = Liveness.ALIVE;
+
+    // Clock sync: offset and round trip of the last few heartbeats, written only by the thread reading this
+    // connection. As in NTP's clock filter, the offset is taken from the sample with the shortest round trip,
+    // the one least distorted by queueing on either path.
+    private static final int CLOCK_SAMPLES = 8;
+    private final long[] sampleRoundTrip = new long[CLOCK_SAMPLES];
+    private final long[] sampleOffset = new long[CLOCK_SAMPLES];
+    private int clockSamples = 0;
+    private volatile long clockOffsetMillis;   // Client clock minus game clock
+    private volatile boolean clockSynced = false;
+
+    protected ClientConnection(int id, ServerTrivia server, GameRoom room) {
+        this.id = id;
+        this.server = server;
+        this.room = room;
+        this.sessionToken = server.getSessionTable().allocateToken();
+        this.outbound = server.newOutboundQueue();
+        this.lastHeard = server.getClock().currentTimeMillis();
+    }
+
+    // Queues an already encoded frame for the transport to write; never blocks on the network
+    // A client whose queue overflows under the configured policy is disconnected as a slow consumer
+    public void sendEncoded(EncodedMessage message) throws IOException {
+        if (disconnected) {
+            throw new IOException("Connection closed");
+        }
+        if (!outbound.offer(message)) {
+            onDisconnect("slow consumer, outbound queue passed its high-water mark");
+            return;
+        }
+        requestFlush();
+    }
+
+    // Asks the transport to start draining the outbound queue
+    protected abstract void requestFlush();
+
+    // Safely sends a TCP message to the client
+    public void sendMessage(TCPMessage message) throws IOException {
+        sendEncoded(EncodedMessage.of(message));
+    }
+
+    // IP address the client connected from
+    public abstract String getClientIP();
+
+    // Address the client connected from, compared against the sender of each buzz
+    public abstract InetAddress getClientAddress();
+
+    // Releases the underlying network resources
+    protected abstract void closeConnection();
+
+    // Sends the current score and question so a late joiner can play straight away
+    protected void sendWelcome() throws IOException {
+        sendMessage(new TCPMessage(TCPMessage.MessageType.SESSION, sessionToken));
+        room.sendScoreSnapshot(this);
+        sendMessage(new TCPMessage(TCPMessage.MessageType.QUESTION, room.getCurrentQuestion()));
+    }
+
+    // Handles one decoded message received from the client
+    protected void onMessage(TCPMessage input) {
+        long now = server.getClock().currentTimeMillis();
+        lastHeard = now;
+        if (input.getType() == TCPMessage.MessageType.ANSWER) {
+            processAnswer((PlayerAnswer) input.getPayload());
+        } else if (input.getType() == TCPMessage.MessageType.PONG) {
+            onClockReading((ClockReading) input.getPayload(), now);
+        }
+        // Additional message types can be handled here
+    }
+
+    // Removes the client from its room and the server exactly once, whichever side noticed first
+    protected void onDisconnect(String reason) {
+        if (disconnected) {
+            return;
+        }
+        disconnected = true;
+        isActive = false;
+        System.err.println("Client " + id + " disconnected: " + reason);
+        room.removeClient(id);
+        server.removeClient(this);
+        closeConnection();
+    }
+
+    // Round trip excludes the time the client held the PING; offset assumes both paths take equally long
+    private void onClockReading(ClockReading reading, long received) {
+        long roundTrip = Math.max(0, (received - reading.getServerSent()) - (reading.getClientSent() - reading.getClientReceived()));
+        long offset = ((reading.getClientReceived() - reading.getServerSent()) +
+                       (reading.getClientSent() - received)) / 2;
+        int slot = clockSamples++ % CLOCK_SAMPLES;
+        sampleRoundTrip[slot] = roundTrip;
+        sampleOffset[slot] = offset;
+        int best = 0;
+        for (int i = 1; i < Math.min(clockSamples, CLOCK_SAMPLES); i++) {
+            if (sampleRoundTrip[i] < sampleRoundTrip[best]) {
+                best = i;
+            }
+        }
+        clockOffsetMillis = sampleOffset[best];
+        long previous = roundTripMillis;
+        roundTripMillis = previous < 0 ? roundTrip : (7 * previous + roundTrip) / 8;
+        clockSynced = true;
+    }
+
+    // Game clock time at which this player pressed Poll, from the client timestamp on the buzz and its
+    // arrival time. The corrected press is kept within [arrival - allowance, arrival], the allowance being the
+    // measured round trip capped at maxCompensationMillis, so a doctored timestamp gains no more than an
+    // honest player that far away would. Before the first PONG the arrival time is used.
+    public long pressTime(long clientTimestamp, long arrivedAt, long maxCompensationMillis) {
+        if (!clockSynced || clientTimestamp <= 0 || maxCompensationMillis <= 0) {
+            return arrivedAt;
+        }
+        long allowance = Math.min(maxCompensationMillis, roundTripMillis);
+        long pressed = clientTimestamp - clockOffsetMillis;
+        return Math.max(arrivedAt - allowance, Math.min(arrivedAt, pressed));
+    }
+
+    // Added by Eric - Processes player answer
+    // Modified by Brooks - Added better error handling for answer processing
+    private void processAnswer(PlayerAnswer answer) {
+        if (answer != null) {
+            this.answer = answer;
+            System.out.println("Received answer from client " + id +
+                             " for Q" + answer.getQuestionId() +
+                             ": " + answer.getSelectedOption());
+            // The room judges the answer right away instead of waiting to poll for it
+            long received = System.nanoTime();
+            if (room.onAnswer(this, answer)) {
+                Metrics.ANSWER_TO_VERDICT.recordSince(received);
+            }
+        }
+    }
+
+    // Added by Eric - Get player answer
+    public PlayerAnswer getAnswer() {
+        return answer;
+    }
+
+    // Added by Eric - Clear player answer
+    public void clearAnswer() {
+        this.answer = null;
+    }
+
+    // Added by Brooks - Sends a new question to the client
+    public void sendQuestion(Question question) throws IOException {
+        sendMessage(new TCPMessage(TCPMessage.MessageType.QUESTION, question));
+    }
+
+    // Added by Brooks - Acknowledges first buzz attempt
+    public void sendAck() throws IOException {
+        sendEncoded(EncodedMessage.ACK);
+    }
+
+    // Added by Brooks - Notifies late buzz attempts
+    public void sendNack() throws IOException {
+        sendEncoded(EncodedMessage.NACK);
+    }
+
+    // Added by Brooks - Terminates client connection gracefully
+    public void sendGameOver() throws IOException {
+        sendEncoded(EncodedMessage.GAME_OVER);
+        isActive = false;
+    }
+
+    // Added by Eric - Notifies client if they answered correctly
+    public void sendRight() throws IOException {
+        sendEncoded(EncodedMessage.CORRECT);
+    }
+
+    // Added by Eric - Notifies client if they answered wrong
+    public void sendWrong() throws IOException {
+        sendEncoded(EncodedMessage.WRONG);
+    }
+
+    // Added by Eric - Notifies client if they did not send answer in time
+    public void sendTimeout() throws IOException {
+        sendEncoded(EncodedMessage.TIMEOUT);
+    }
+
+    // Added by Pierce - will allow the client to poll when sent to the client.
+    public void sendEligibility() throws IOException {
+        sendEncoded(EncodedMessage.ELIGIBILITY);
+    }
+
+    // Epoch of the last question this client buzzed in
+    public int getBuzzEpoch() {
+        return buzzEpoch.get();
+    }
+
+    // Records a buzz for the given epoch; false if this client already buzzed in it
+    public boolean markBuzzed(int epoch) {
+        int previous = buzzEpoch.get();
+        return previous != epoch && buzzEpoch.compareAndSet(previous, epoch);
+    }
+
+    // Scoreboard version the next score delta for this client builds on, or -1 when it needs a snapshot
+    // because it never had one or some of its score updates were dropped
+    public long getScoreBase() {
+        return outbound.takeScoresDropped() ? -1 : outbound.scoreBase(scoreVersion);
+    }
+
+    public void setScoreVersion(long version) {
+        this.scoreVersion = version;
+    }
+
+    public long getLastHeard() {
+        return lastHeard;
+    }
+
+    public long getRoundTripMillis() {
+        return roundTripMillis;
+    }
+
+    public long getClockOffsetMillis() {
+        return clockOffsetMillis;
+    }
+
+    public boolean isClockSynced() {
+        return clockSynced;
+    }
+
+    public Liveness getLiveness() {
+        return liveness;
+    }
+
+    public void setLiveness(Liveness liveness) {
+        this.liveness = liveness;
+    }
+
+    public long getBuzzedAt() {
+        return buzzedAt;
+    }
+
+    public void setBuzzedAt(long nanos) {
+        buzzedAt = nanos;
+    }
+
+    public int getScoreSlot() {
+        return scoreSlot;
+    }
+
+    public void setScoreSlot(int scoreSlot) {
+        this.scoreSlot = scoreSlot;
+    }
+
+    public int getOutboundDepth() {
+        return outbound.size();
+    }
+
+    public int getSessionToken() {
+        return sessionToken;
+    }
+
+    // Added by Brooks - Getter for client ID
+    public int getClientId() {
+        return id;
+    }
+
+    public GameRoom getRoom() {
+        return room;
+    }
+}
@@ -0,0 +1,89 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import model.FrameCodec;
+import model.ScoreUpdate;
+import model.TCPMessage;
+
+// A TCP message already encoded into its wire frame
+// Broadcasts encode once and hand the same immutable bytes to every connection; messages without a
+// payload are encoded once for the life of the server
+public final class EncodedMessage {
+    public static final EncodedMessage ACK = constant(TCPMessage.MessageType.ACK);
+    public static final EncodedMessage NACK = constant(TCPMessage.MessageType.NACK);
+    public static final EncodedMessage CORRECT = constant(TCPMessage.MessageType.CORRECT);
+    public static final EncodedMessage WRONG = constant(TCPMessage.MessageType.WRONG);
+    public static final EncodedMessage TIMEOUT = constant(TCPMessage.MessageType.TIMEOUT);
+    public static final EncodedMessage GAME_OVER = constant(TCPMessage.MessageType.GAME_OVER);
+    public static final EncodedMessage ELIGIBILITY = constant(TCPMessage.MessageType.ELIGIBILITY);
+
+    private final TCPMessage.MessageType type;
+    private final byte[] frame;
+    private final long scoreBase;
+
+    private EncodedMessage(TCPMessage.MessageType type, byte[] frame, long scoreBase) {
+        this.type = type;
+        this.frame = frame;
+        this.scoreBase = scoreBase;
+    }
+
+    public static EncodedMessage of(TCPMessage message) throws IOException {
+        return of(message, Long.MAX_VALUE);
+    }
+
+    // scoreBase is the scoreboard version a score delta was computed from; a delta whose base is not known
+    // is taken to cover nothing but itself. Snapshots and ranked windows stand alone and cover everything.
+    public static EncodedMessage of(TCPMessage message, long scoreBase) throws IOException {
+        if (message.getPayload() instanceof ScoreUpdate) {
+            ScoreUpdate update = (ScoreUpdate) message.getPayload();
+            if (update.isSnapshot() || update.isRanked()) {
+                scoreBase = -1;
+            }
+        }
+        return new EncodedMessage(message.getType(), FrameCodec.encode(message), scoreBase);
+    }
+
+    private static EncodedMessage constant(TCPMessage.MessageType type) {
+        try {
+            return of(new TCPMessage(type));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode " + type, e);
+        }
+    }
+
+    public TCPMessage.MessageType getType() {
+        return type;
+    }
+
+    // Scoreboard version a score delta builds on: -1 for a complete score update, Long.MAX_VALUE if unknown
+    long getScoreBase() {
+        return scoreBase;
+    }
+
+    // Whether this score update carries everything an older one did, so dropping the older one loses nothing;
+    // score updates hold absolute scores, so a delta from an earlier base may overlap but never contradicts
+    boolean covers(EncodedMessage older) {
+        return type == TCPMessage.MessageType.SCORE_UPDATE && scoreBase <= older.scoreBase;
+    }
+
+    public int size() {
+        return frame.length;
+    }
+
+    // A fresh read-only view over the shared bytes; each connection tracks its own write position
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(frame);
+    }
+
+    @Override
+    public String toString() {
+        return "TCPMessage{" + type + ", " + frame.length + " bytes}";
+    }
+}
@@ -0,0 +1,557 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Write-ahead log of game events, so a restarted server resumes unfinished games with their scores
+// Rooms append fixed-size records to an in-memory batch and return at once; a writer thread writes each
+// batch through a FileChannel and fsyncs it once (group commit), so the game loop never waits for the disk.
+// The writer also replays every record it made durable into the state it would recover, and every
+// wal.snapshotEvents records writes that state as a snapshot and starts a new segment, deleting the old
+// ones, so recovery only reads the snapshot plus a short log tail.
+//
+// Files in wal.dir:
+//   events-<first sequence number>.wal  records of RECORD_SIZE bytes, numbered from the segment's first
+//   snapshot.dat                        magic, format, last sequence number covered, state, CRC32C
+// Record (big-endian): byte type, int room, int player, int value, long extra, int CRC32C of the rest.
+// A record that is cut short or fails its checksum marks a torn write: recovery truncates the log there.
+public class EventLog {
+    // Event types; the meaning of player, value and extra depends on the type
+    public static final byte ROOM_CREATED = 1;       // extra = question seed
+    public static final byte PLAYER_JOINED = 2;      // player
+    public static final byte BUZZ_ACCEPTED = 3;      // player, value = question number
+    public static final byte VERDICT = 4;            // player, value = question number, extra = verdict code
+    public static final byte SCORE_DELTA = 5;        // player, value = delta
+    public static final byte QUESTION_ADVANCED = 6;  // value = question number, extra = questions drawn
+    public static final byte ROOM_FINISHED = 7;
+
+    // Verdict codes
+    public static final int RIGHT = 1;
+    public static final int WRONG = 2;
+    public static final int TIMEOUT = 3;
+
+    static final int RECORD_SIZE = 1 + 4 + 4 + 4 + 8 + 4;
+    private static final int SNAPSHOT_MAGIC = 0x54534E50; // "TSNP"
+    private static final int SNAPSHOT_FORMAT = 1;
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    private final Path directory;
+    private final long commitDelayMillis;
+    private final long snapshotEvents;
+    private final CRC32C crc = new CRC32C(); // Writer thread only
+
+    // Events appended since the writer last took a batch; swapped with the writer's buffer under this lock
+    private final Object batchLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(64 * RECORD_SIZE);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * RECORD_SIZE);
+    private volatile boolean closed = false;
+    private volatile boolean failed = false;
+
+    // Owned by the writer thread once it starts
+    private FileChannel segment;
+    private long nextSequence = 1;
+    private long sinceSnapshot = 0;
+    private final State state = new State();
+    private Thread writer;
+
+    // What recovery found, handed to the server before any room is created
+    private final List<RecoveredRoom> recoveredRooms;
+    private final int maxClientId;
+    private final int maxRoomId;
+
+    private EventLog(Path directory, long commitDelayMillis, long snapshotEvents) throws IOException {
+        this.directory = directory;
+        this.commitDelayMillis = commitDelayMillis;
+        this.snapshotEvents = Math.max(1, snapshotEvents);
+        if (directory == null) {
+            recoveredRooms = Collections.emptyList();
+            maxClientId = 0;
+            maxRoomId = 0;
+            return;
+        }
+        Files.createDirectories(directory);
+        recover();
+        recoveredRooms = state.copyRooms();
+        maxClientId = state.maxClientId;
+        maxRoomId = state.maxRoomId;
+        // Compact what was just replayed, so the next recovery starts from here
+        snapshot();
+        writer = new Thread(this::run, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "event-log-shutdown"));
+    }
+
+    // Opens the log configured by wal.*, recovering whatever a previous run left behind
+    // Falls back to a log that records nothing if the directory cannot be used, so the game still runs
+    // The log is off unless enabled with an explicit wal.dir, as config/server.properties does for the server,
+    // so tools, benches and tests that build a ServerTrivia never replay or leave state in the working directory
+    public static EventLog open(ServerConfig config) {
+        if (!config.getBoolean("wal.enabled", false)) {
+            return disabled();
+        }
+        String dir = config.getString("wal.dir", "");
+        if (dir.isEmpty()) {
+            System.err.println("wal.enabled is set without wal.dir; games will not survive a restart");
+            return disabled();
+        }
+        Path directory = Paths.get(dir);
+        try {
+            return new EventLog(directory, config.getLong("wal.commitDelayMillis", 2),
+                                config.getLong("wal.snapshotEvents", 10000));
+        } catch (IOException e) {
+            System.err.println("Event log unavailable, games will not survive a restart: " + e.getMessage());
+            return disabled();
+        }
+    }
+
+    public static EventLog disabled() {
+        try {
+            return new EventLog(null, 0, 1);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Nothing touches the disk without a directory
+        }
+    }
+
+    public void roomCreated(int room, long seed) {
+        append(ROOM_CREATED, room, 0, 0, seed);
+    }
+
+    public void playerJoined(int room, int player) {
+        append(PLAYER_JOINED, room, player, 0, 0);
+    }
+
+    public void buzzAccepted(int room, int player, int question) {
+        append(BUZZ_ACCEPTED, room, player, question, 0);
+    }
+
+    public void verdict(int room, int player, int question, int verdict) {
+        append(VERDICT, room, player, question, verdict);
+    }
+
+    public void scoreDelta(int room, int player, int delta) {
+        append(SCORE_DELTA, room, player, delta, 0);
+    }
+
+    public void questionAdvanced(int room, int question, int drawn) {
+        append(QUESTION_ADVANCED, room, 0, question, drawn);
+    }
+
+    public void roomFinished(int room) {
+        append(ROOM_FINISHED, room, 0, 0, 0);
+    }
+
+    // Unfinished games found at startup, oldest room first
+    public List<RecoveredRoom> getRecoveredRooms() {
+        return recoveredRooms;
+    }
+
+    // Highest client and room IDs the log has seen, so new ones never collide with recovered ones
+    public int getMaxClientId() {
+        return maxClientId;
+    }
+
+    public int getMaxRoomId() {
+        return maxRoomId;
+    }
+
+    // Queues one record; only takes the batch lock, never touches the disk
+    private void append(byte type, int room, int player, int value, long extra) {
+        if (writer == null || failed) {
+            return;
+        }
+        synchronized (batchLock) {
+            if (closed) {
+                return;
+            }
+            if (pending.remaining() < RECORD_SIZE) {
+                pending.flip();
+                pending = ByteBuffer.allocate(pending.capacity() * 2).put(pending);
+            }
+            boolean wasEmpty = pending.position() == 0;
+            pending.put(type).putInt(room).putInt(player).putInt(value).putLong(extra).putInt(0);
+            if (wasEmpty) {
+                batchLock.notify();
+            }
+        }
+    }
+
+    // Makes everything appended so far durable, writes a final snapshot and stops the writer
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        synchronized (batchLock) {
+            closed = true;
+            batchLock.notify();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer thread: one write and one fsync per batch, however many events the batch holds
+    private void run() {
+        try {
+            while (true) {
+                synchronized (batchLock) {
+                    while (pending.position() == 0 && !closed) {
+                        batchLock.wait();
+                    }
+                    if (pending.position() == 0) {
+                        break;
+                    }
+                }
+                if (commitDelayMillis > 0 && !closed) {
+                    Thread.sleep(commitDelayMillis); // Let the rest of a burst join this commit
+                }
+                synchronized (batchLock) {
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                }
+                commit(writing);
+                writing.clear();
+                if (sinceSnapshot >= snapshotEvents) {
+                    snapshot();
+                }
+            }
+            snapshot();
+            segment.close();
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Event log failed, no longer recording games: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(ByteBuffer batch) throws IOException {
+        batch.flip();
+        for (int record = 0; record < batch.limit(); record += RECORD_SIZE) {
+            crc.reset();
+            crc.update(batch.array(), record, RECORD_SIZE - 4);
+            batch.putInt(record + RECORD_SIZE - 4, (int) crc.getValue());
+        }
+        while (batch.hasRemaining()) {
+            segment.write(batch);
+        }
+        segment.force(false);
+        for (int record = 0; record < batch.limit(); record += RECORD_SIZE) {
+            state.apply(batch, record);
+            nextSequence++;
+            sinceSnapshot++;
+        }
+    }
+
+    // Loads the snapshot, then replays every segment after it; a torn tail is cut off
+    private void recover() throws IOException {
+        long covered = readSnapshot();
+        nextSequence = covered + 1;
+        long replayed = 0;
+        for (Path file : segments()) {
+            long first = firstSequence(file);
+            if (first > nextSequence) {
+                System.err.println("Event log has a gap before " + file.getFileName() + ", ignoring the rest");
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            boolean torn = false;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long sequence = first;
+                long position = 0;
+                while (true) {
+                    readRecord(channel, record, position);
+                    if (record.position() == 0) {
+                        break;
+                    }
+                    if (record.hasRemaining() || !checksumMatches(record)) {
+                        System.err.println("Event log " + file.getFileName() + " has a torn record at byte " +
+                                           position + ", truncating");
+                        channel.truncate(position);
+                        torn = true;
+                        break;
+                    }
+                    if (sequence == nextSequence) {
+                        state.apply(record, 0);
+                        nextSequence++;
+                        replayed++;
+                    }
+                    sequence++;
+                    position += RECORD_SIZE;
+                }
+            }
+            if (torn) {
+                break; // Anything written after a torn record cannot be trusted
+            }
+        }
+        if (covered > 0 || replayed > 0) {
+            System.out.println("Recovered game state from " + directory + ": snapshot up to event " + covered +
+                               ", " + replayed + " events replayed, " + state.rooms.size() + " unfinished games");
+        }
+    }
+
+    // Fills the buffer from the given position, stopping early only at the end of the file
+    private static void readRecord(FileChannel channel, ByteBuffer record, long position) throws IOException {
+        record.clear();
+        while (record.hasRemaining()) {
+            if (channel.read(record, position + record.position()) <= 0) {
+                return;
+            }
+        }
+    }
+
+    private boolean checksumMatches(ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        return record.getInt(RECORD_SIZE - 4) == (int) crc.getValue();
+    }
+
+    // Returns the last sequence number the snapshot covers, or 0 without a usable snapshot
+    private long readSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < 20) {
+            System.err.println("Ignoring truncated snapshot " + file);
+            return 0;
+        }
+        crc.reset();
+        crc.update(bytes, 0, bytes.length - 4);
+        if (ByteBuffer.wrap(bytes).getInt(bytes.length - 4) != (int) crc.getValue()) {
+            System.err.println("Ignoring snapshot with a bad checksum: " + file);
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                System.err.println("Ignoring snapshot in an unknown format: " + file);
+                return 0;
+            }
+            long covered = in.readLong();
+            state.read(in);
+            return covered;
+        }
+    }
+
+    // Writes the state up to the last durable event, then starts a new segment and drops the old ones
+    private void snapshot() throws IOException {
+        Path staged = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeLong(nextSequence - 1);
+            state.write(out);
+            byte[] body = bytes.toByteArray();
+            crc.reset();
+            crc.update(body);
+            ByteBuffer data = ByteBuffer.allocate(body.length + 4);
+            data.put(body).putInt((int) crc.getValue()).flip();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(staged, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        // The rename is not durable until the directory is; only then may the segments it covers go
+        syncDirectory();
+
+        if (segment != null) {
+            segment.close();
+        }
+        Path next = directory.resolve(String.format("events-%016d.wal", nextSequence));
+        for (Path old : segments()) {
+            if (!old.equals(next)) {
+                Files.delete(old);
+            }
+        }
+        segment = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        syncDirectory(); // Events fsynced into the new segment must not be lost with its directory entry
+        sinceSnapshot = 0;
+    }
+
+    // Flushes renames, new files and deletions in the log directory to disk
+    private void syncDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Some platforms (Windows) cannot open a directory at all, and there the rename is already durable
+            if (Files.isDirectory(directory) && !System.getProperty("os.name", "").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+
+    // Segment files in sequence order
+    private List<Path> segments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "events-*.wal")) {
+            stream.forEach(files::add);
+        }
+        files.sort((a, b) -> Long.compare(firstSequence(a), firstSequence(b)));
+        return files;
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring("events-".length(), name.length() - ".wal".length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // A game that had not finished when the server stopped
+    public static final class RecoveredRoom {
+        private final int roomId;
+        private long seed;
+        private int questionNumber;
+        private int drawn;
+        private final Map<Integer, Integer> scores = new LinkedHashMap<>(); // Client ID to score, in join order
+
+        private RecoveredRoom(int roomId) {
+            this.roomId = roomId;
+        }
+
+        private RecoveredRoom copy() {
+            RecoveredRoom copy = new RecoveredRoom(roomId);
+            copy.seed = seed;
+            copy.questionNumber = questionNumber;
+            copy.drawn = drawn;
+            copy.scores.putAll(scores);
+            return copy;
+        }
+
+        public int getRoomId() {
+            return roomId;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        // Last question the room asked, and how many it had drawn from its cursor by then
+        public int getQuestionNumber() {
+            return questionNumber;
+        }
+
+        public int getDrawn() {
+            return drawn;
+        }
+
+        public Map<Integer, Integer> getScores() {
+            return Collections.unmodifiableMap(scores);
+        }
+    }
+
+    // Unfinished games rebuilt from events; finished games are dropped as soon as they end
+    private static final class State {
+        private final Map<Integer, RecoveredRoom> rooms = new LinkedHashMap<>();
+        private int maxClientId = 0;
+        private int maxRoomId = 0;
+
+        void apply(ByteBuffer records, int offset) {
+            byte type = records.get(offset);
+            int roomId = records.getInt(offset + 1);
+            int player = records.getInt(offset + 5);
+            int value = records.getInt(offset + 9);
+            long extra = records.getLong(offset + 13);
+            if (type == ROOM_CREATED) {
+                RecoveredRoom room = new RecoveredRoom(roomId);
+                room.seed = extra;
+                rooms.put(roomId, room);
+                maxRoomId = Math.max(maxRoomId, roomId);
+                return;
+            }
+            RecoveredRoom room = rooms.get(roomId);
+            if (room == null) {
+                return;
+            }
+            switch (type) {
+                case PLAYER_JOINED:
+                    room.scores.putIfAbsent(player, 0);
+                    maxClientId = Math.max(maxClientId, player);
+                    break;
+                case SCORE_DELTA:
+                    room.scores.merge(player, value, Integer::sum);
+                    break;
+                case QUESTION_ADVANCED:
+                    room.questionNumber = value;
+                    room.drawn = (int) extra;
+                    break;
+                case ROOM_FINISHED:
+                    rooms.remove(roomId);
+                    break;
+                default:
+                    break; // Buzzes and verdicts are kept for the record only
+            }
+        }
+
+        List<RecoveredRoom> copyRooms() {
+            List<RecoveredRoom> copies = new ArrayList<>(rooms.size());
+            for (RecoveredRoom room : rooms.values()) {
+                copies.add(room.copy());
+            }
+            return Collections.unmodifiableList(copies);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(maxClientId);
+            out.writeInt(maxRoomId);
+            out.writeInt(rooms.size());
+            for (RecoveredRoom room : rooms.values()) {
+                out.writeInt(room.roomId);
+                out.writeLong(room.seed);
+                out.writeInt(room.questionNumber);
+                out.writeInt(room.drawn);
+                out.writeInt(room.scores.size());
+                for (Map.Entry<Integer, Integer> entry : room.scores.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeInt(entry.getValue());
+                }
+            }
+        }
+
+        void read(DataInputStream in) throws IOException {
+            maxClientId = in.readInt();
+            maxRoomId = in.readInt();
+            int roomCount = in.readInt();
+            for (int i = 0; i < roomCount; i++) {
+                RecoveredRoom room = new RecoveredRoom(in.readInt());
+                room.seed = in.readLong();
+                room.questionNumber = in.readInt();
+                room.drawn = in.readInt();
+                int players = in.readInt();
+                for (int j = 0; j < players; j++) {
+                    room.scores.put(in.readInt(), in.readInt());
+                }
+                rooms.put(room.roomId, room);
+            }
+        }
+    }
+}
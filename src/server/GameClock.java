@@ -0,0 +1,49 @@
+package server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import model.HashedWheelTimer;
+
+// Time source and timer service behind every room's round timing
+// Rooms never read the wall clock or touch a thread pool directly: the live server hands them a clock backed
+// by its timing wheel, while GameSimulation hands them a SimulatedClock that jumps from one deadline to the next
+public interface GameClock {
+
+    // A scheduled task that can still be called off
+    interface Timeout {
+        void cancel();
+    }
+
+    // Milliseconds on this clock's own timeline; only differences between readings are meaningful
+    long currentTimeMillis();
+
+    // Runs the task once after the given delay
+    Timeout schedule(Runnable task, long delayMillis);
+
+    // Runs the task as soon as possible, but never on the calling thread's stack
+    void execute(Runnable task);
+
+    // Real time: deadlines are kept on the timing wheel and, once due, run on the executor so a slow room
+    // never holds up the wheel's ticking thread
+    static GameClock system(HashedWheelTimer timer, Executor executor) {
+        return new GameClock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+
+            @Override
+            public Timeout schedule(Runnable task, long delayMillis) {
+                HashedWheelTimer.Timeout timeout = timer.newTimeout(() -> executor.execute(task), delayMillis,
+                                                                    TimeUnit.MILLISECONDS);
+                return timeout::cancel;
+            }
+
+            @Override
+            public void execute(Runnable task) {
+                executor.execute(task);
+            }
+        };
+    }
+}
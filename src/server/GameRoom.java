@@ -0,0 +1,587 @@
+package server;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Difficulty;
+import model.PlayerAnswer;
+import model.Question;
+import model.QuestionBank;
+import model.QuestionCursor;
+import model.ScoreUpdate;
+import model.TCPMessage;
+
+// One independent trivia game inside the server
+// Each room owns its own question flow, buzz queue, scores and members, while the accept loop,
+// UDP socket, question bank and thread pools are shared by every room in the process
+public class GameRoom {
+    private final int roomID;
+    private final ServerTrivia server;
+    private final QuestionBank questionBank;
+    private final int capacity;
+    private final Map<Integer, ClientConnection> members = new ConcurrentHashMap<>();
+    private final Scoreboard scoreboard;
+    private final BuzzQueue buzzQueue = new BuzzQueue();
+    private volatile Question currentQuestion;
+    private final QuestionCursor questionCursor; // This room's own order through the bank
+    private final EventLog eventLog;
+    private final GameClock clock; // Every deadline below is armed on this clock
+    private volatile boolean gameActive = true;
+
+    // Round state machine; every transition happens under the room lock
+    private enum RoundState { WAITING, BUZZING, ANSWERING, INTERMISSION, FINISHED }
+    private volatile RoundState state = RoundState.WAITING;
+    private ClientConnection answeringClient;
+    private GameClock.Timeout deadline;
+    private volatile long roundSequence = 0;
+    private final long buzzWindowMillis;
+    private final long settleMillis;          // Grace after the buzz window for buzzes still in flight
+    private final long maxCompensationMillis; // Most a buzz's press time may be moved before its arrival
+    private final long answerWindowMillis;
+    private final long intermissionMillis;
+    private final long idleTimeoutMillis;
+    private GameClock.Timeout idleDeadline; // Armed while the room has no members
+
+    // Heartbeats: members are pinged every interval; silence past suspect costs a buzz, past dead the connection
+    private final long heartbeatIntervalMillis;
+    private final long suspectMillis;
+    private final long deadMillis;
+    private static final AtomicLong heartbeatDisconnects = new AtomicLong();
+
+    // Score changes are published at most once per tick instead of once per change
+    private final long scoreTickMillis;
+    private boolean scorePublishPending = false;
+
+    // Above fullTableLimit players, clients get a ranked window (top K and their neighbours) instead of the table
+    private final int leaderboardTopK;
+    private final int leaderboardNeighbours;
+    private final int fullTableLimit;
+
+    public GameRoom(int roomID, ServerTrivia server, QuestionBank questionBank, int capacity) {
+        this(roomID, server, questionBank, capacity, null);
+    }
+
+    // Resumes a game recovered from the event log when recovered is not null: the same question order picks
+    // up after the last question asked, and every earlier player keeps their score on the leaderboard
+    public GameRoom(int roomID, ServerTrivia server, QuestionBank questionBank, int capacity,
+                    EventLog.RecoveredRoom recovered) {
+        this.roomID = roomID;
+        this.server = server;
+        this.questionBank = questionBank;
+        this.capacity = capacity;
+        this.eventLog = server.getEventLog();
+        this.clock = server.getClock();
+        ServerConfig config = server.getConfig();
+        this.questionCursor = newQuestionCursor(config, recovered);
+        this.buzzWindowMillis = config.getLong("room.buzzWindowMillis", 15000);
+        this.settleMillis = config.getLong("buzz.settleMillis", 200);
+        this.maxCompensationMillis = config.getLong("buzz.maxCompensationMillis", 250);
+        this.answerWindowMillis = config.getLong("room.answerWindowMillis", 10000);
+        this.intermissionMillis = config.getLong("room.intermissionMillis", 5000);
+        this.idleTimeoutMillis = config.getLong("room.idleTimeoutSeconds", 60) * 1000;
+        this.heartbeatIntervalMillis = config.getLong("heartbeat.intervalMillis", 1000);
+        this.suspectMillis = config.getLong("heartbeat.suspectMillis", 3000);
+        this.deadMillis = config.getLong("heartbeat.deadMillis", 5000);
+        this.scoreTickMillis = config.getLong("scoreboard.tickMillis", 50);
+        this.scoreboard = new Scoreboard(config.getInt("scoreboard.historySize", 4096));
+        this.leaderboardTopK = config.getInt("leaderboard.topK", 10);
+        this.leaderboardNeighbours = config.getInt("leaderboard.neighbours", 2);
+        this.fullTableLimit = config.getInt("leaderboard.fullTableLimit", 50);
+        if (recovered != null) {
+            recovered.getScores().forEach((playerId, score) ->
+                    scoreboard.addScore(scoreboard.addPlayer(playerId), score));
+        }
+    }
+
+    // Picks this room's questions from the configured filter; each room gets its own seed unless one is set
+    // A resumed room reuses its logged seed, so it continues the same order where it stopped
+    private QuestionCursor newQuestionCursor(ServerConfig config, EventLog.RecoveredRoom recovered) {
+        String category = config.getString("room.category", "");
+        Difficulty difficulty = Difficulty.parse(config.getString("room.difficulty", ""));
+        boolean shuffle = config.getBoolean("room.shuffle", true);
+        long seed = recovered != null ? recovered.getSeed() : config.getLong("room.seed", System.nanoTime()) + roomID;
+        QuestionCursor cursor = questionBank.newCursor(category.isBlank() ? null : category, difficulty,
+                config.getInt("room.questionsPerGame", 0), shuffle, seed);
+        if (recovered != null) {
+            cursor.skip(recovered.getDrawn());
+        } else {
+            eventLog.roomCreated(roomID, seed);
+        }
+        System.out.println("Room " + roomID + " will ask " + cursor.remaining() + " questions" +
+                           (shuffle ? " (seed " + seed + ")" : ""));
+        return cursor;
+    }
+
+    // Adds a newly connected client to this room and starts their score at zero
+    public void addClient(ClientConnection client) {
+        client.setScoreSlot(scoreboard.addPlayer(client.getClientId()));
+        eventLog.playerJoined(roomID, client.getClientId());
+        members.put(client.getClientId(), client);
+        cancelIdleDeadline();
+        scheduleScorePublish();
+        System.out.println("Client " + client.getClientId() + " joined room " + roomID);
+    }
+
+    // Removes a disconnected client; their score stays on the leaderboard
+    public void removeClient(int clientID) {
+        members.remove(clientID);
+        if (members.isEmpty()) {
+            armIdleDeadline();
+        }
+        releaseFloor(clientID);
+    }
+
+    // The answering player is gone: charge the timeout now instead of waiting out the answer window
+    private synchronized void releaseFloor(int clientID) {
+        if (state == RoundState.ANSWERING && answeringClient != null && answeringClient.getClientId() == clientID) {
+            System.out.println("Client " + clientID + " left while answering in room " + roomID);
+            onAnswerTimeout();
+        }
+    }
+
+    // A room everyone has left ends its game once it has stayed empty for the idle timeout, instead of
+    // running its remaining questions for nobody
+    private synchronized void armIdleDeadline() {
+        if (idleTimeoutMillis > 0 && idleDeadline == null && gameActive && members.isEmpty()) {
+            idleDeadline = schedule(this::onIdle, idleTimeoutMillis);
+        }
+    }
+
+    private synchronized void cancelIdleDeadline() {
+        if (idleDeadline != null) {
+            idleDeadline.cancel();
+            idleDeadline = null;
+        }
+    }
+
+    private synchronized void onIdle() {
+        idleDeadline = null;
+        if (gameActive && members.isEmpty()) {
+            System.out.println("Room " + roomID + " has been empty for " + idleTimeoutMillis / 1000 + " s");
+            endGame();
+        }
+    }
+
+    // A room takes new players until it is full or its game has finished
+    public boolean isOpen() {
+        return gameActive && members.size() < capacity;
+    }
+
+    // Updates client score with positive/negative delta
+    public void updateClientScore(ClientConnection client, int delta) {
+        scoreboard.addScore(client.getScoreSlot(), delta);
+        eventLog.scoreDelta(roomID, client.getClientId(), delta);
+        scheduleScorePublish();
+    }
+
+    public int getClientScore(ClientConnection client) {
+        return scoreboard.getScore(client.getScoreSlot());
+    }
+
+    // Sends one client the full scoreboard; under the room lock so it cannot overtake a delta being published
+    public synchronized void sendScoreSnapshot(ClientConnection client) throws IOException {
+        ScoreUpdate snapshot = usesRankedWindows()
+                ? scoreboard.rankedWindow(client.getScoreSlot(), leaderboardTopK, leaderboardNeighbours)
+                : scoreboard.snapshot();
+        client.sendMessage(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, snapshot));
+        client.setScoreVersion(snapshot.getVersion());
+    }
+
+    // Validates player answer against correct answer
+    public boolean validateAnswer(PlayerAnswer answer) {
+        char correct = questionBank.getCorrectAnswer(answer.getQuestionId());
+        return correct != ' ' && correct == answer.getSelectedOption();
+    }
+
+    // Starts the room's game once the join wait is over
+    public void startGame(long joinWaitMillis) {
+        schedule(this::nextQuestion, joinWaitMillis);
+        if (heartbeatIntervalMillis > 0) {
+            schedule(this::heartbeat, heartbeatIntervalMillis);
+        }
+    }
+
+    // Pings every member with the current clock reading and disconnects those silent for too long, which
+    // also takes them out of the server's active clients
+    private void heartbeat() {
+        if (!gameActive) {
+            return;
+        }
+        try {
+            EncodedMessage ping = EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.PING, clock.currentTimeMillis()));
+            for (ClientConnection client : members.values()) {
+                if (checkLiveness(client) == ClientConnection.Liveness.DEAD) {
+                    heartbeatDisconnects.incrementAndGet();
+                    client.onDisconnect("no heartbeat for " + (clock.currentTimeMillis() - client.getLastHeard()) + " ms");
+                    continue;
+                }
+                try {
+                    client.sendEncoded(ping);
+                } catch (IOException e) {
+                    System.err.println("Error sending PING to client " + client.getClientId());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error encoding PING: " + e.getMessage());
+        }
+        schedule(this::heartbeat, heartbeatIntervalMillis);
+    }
+
+    // Classifies a member by how long it has been silent; always ALIVE with heartbeats turned off
+    private ClientConnection.Liveness checkLiveness(ClientConnection client) {
+        ClientConnection.Liveness liveness = ClientConnection.Liveness.ALIVE;
+        if (heartbeatIntervalMillis > 0) {
+            long silence = clock.currentTimeMillis() - client.getLastHeard();
+            liveness = silence >= deadMillis ? ClientConnection.Liveness.DEAD
+                     : silence >= suspectMillis ? ClientConnection.Liveness.SUSPECT
+                     : ClientConnection.Liveness.ALIVE;
+        }
+        client.setLiveness(liveness);
+        return liveness;
+    }
+
+    // Sends the next question and opens the buzz window, or ends the game when the bank is exhausted
+    private synchronized void nextQuestion() {
+        if (!gameActive) {
+            return;
+        }
+        if (!hasMoreQuestions()) {
+            endGame();
+            return;
+        }
+        buzzQueue.clear(); // Reset the buzz queue before anyone can buzz on the new question
+        currentQuestion = questionBank.getQuestion(questionCursor.next());
+        eventLog.questionAdvanced(roomID, currentQuestion.getQuestionNumber(), questionCursor.drawn());
+        enterState(RoundState.BUZZING);
+        broadcastQuestion(currentQuestion);
+        eligibility();
+        deadline = schedule(guarded(this::endBuzzWindow), buzzWindowMillis);
+    }
+
+    // Presses made before now can still win, but a far player's buzz may still be on its way; those get the
+    // settle window to arrive before the order is decided
+    private void endBuzzWindow() {
+        if (state != RoundState.BUZZING) {
+            return;
+        }
+        buzzQueue.closeAt(clock.currentTimeMillis());
+        if (settleMillis > 0) {
+            deadline = schedule(guarded(this::closeBuzzing), settleMillis);
+        } else {
+            closeBuzzing();
+        }
+    }
+
+    // Game clock time a buzz arriving now was pressed, corrected by the client's measured clock offset
+    public long pressTime(ClientConnection client, long clientTimestamp) {
+        long arrivedAt = clock.currentTimeMillis();
+        long pressedAt = client.pressTime(clientTimestamp, arrivedAt, maxCompensationMillis);
+        Metrics.BUZZ_COMPENSATION.record((arrivedAt - pressedAt) * 1_000_000L);
+        return pressedAt;
+    }
+
+    // Called by the UDP listener after it queued a buzz; closes the window early once everyone has buzzed,
+    // since no buzz can still be in flight then
+    public void onBuzzAccepted(ClientConnection client) {
+        int epoch = client.getBuzzEpoch(); // The question the buzz was accepted for
+        eventLog.buzzAccepted(roomID, client.getClientId(), getCurrentQuestionNumber());
+        if (state == RoundState.BUZZING && buzzQueue.getBuzzCount() >= members.size()) {
+            clock.execute(guarded(() -> closeBuzzingEarly(epoch)));
+        }
+    }
+
+    // The state and count above were read outside the lock, possibly just as the question ended, so the room
+    // may already be on the next question; only close the window the buzz was meant for
+    private void closeBuzzingEarly(int epoch) {
+        if (buzzQueue.isCurrentEpoch(epoch) && buzzQueue.getBuzzCount() >= members.size()) {
+            closeBuzzing();
+        }
+    }
+
+    // Ends the buzz window and hands the question to the first player in the queue
+    private void closeBuzzing() {
+        if (state == RoundState.BUZZING) {
+            offerNextBuzzer();
+        }
+    }
+
+    // ACKs the next player in buzz order and NACKs everyone else; with nobody left the round is over
+    private void offerNextBuzzer() {
+        Integer answeringClientId;
+        while ((answeringClientId = buzzQueue.getFirstBuzzedClient()) != null) {
+            ClientConnection candidate = members.get(answeringClientId);
+            if (candidate == null) {
+                continue;
+            }
+            // A buzzer whose connection has gone quiet loses the turn rather than stall the round
+            if (checkLiveness(candidate) != ClientConnection.Liveness.ALIVE) {
+                System.out.println("Skipping client " + answeringClientId + ": silent for " +
+                                   (clock.currentTimeMillis() - candidate.getLastHeard()) + " ms");
+                continue;
+            }
+            // Send ACK to answering client
+            try {
+                candidate.sendAck();
+                Metrics.BUZZ_TO_ACK.recordSince(candidate.getBuzzedAt());
+            } catch (IOException e) {
+                System.err.println("Error sending ACK to client " + answeringClientId);
+                continue;
+            }
+            candidate.clearAnswer();
+            answeringClient = candidate;
+            enterState(RoundState.ANSWERING);
+
+            // Send NACK to all other clients in the room
+            broadcast(EncodedMessage.NACK, answeringClientId);
+            deadline = schedule(guarded(this::onAnswerTimeout), answerWindowMillis);
+            return;
+        }
+        finishRound();
+    }
+
+    // Called by a connection as soon as its player's answer arrives, so the verdict goes out immediately
+    // Returns false if the answer was not expected and therefore ignored
+    public synchronized boolean onAnswer(ClientConnection client, PlayerAnswer answer) {
+        if (state != RoundState.ANSWERING || client != answeringClient ||
+            answer.getQuestionId() != getCurrentQuestionNumber()) {
+            return false;
+        }
+        int clientID = client.getClientId();
+        client.clearAnswer();
+        if (validateAnswer(answer)) {
+            eventLog.verdict(roomID, clientID, answer.getQuestionId(), EventLog.RIGHT);
+            updateClientScore(client, 10);
+            try {
+                client.sendRight();
+            } catch (IOException e) {
+                System.err.println("Error sending RIGHT to client " + clientID);
+            }
+            finishRound();
+        } else {
+            eventLog.verdict(roomID, clientID, answer.getQuestionId(), EventLog.WRONG);
+            updateClientScore(client, -10);
+            try {
+                client.sendWrong();
+            } catch (IOException e) {
+                System.err.println("Error sending WRONG to client " + clientID);
+            }
+            // Give the next client a chance
+            offerNextBuzzer();
+        }
+        return true;
+    }
+
+    // The ACKed player did not answer within the answer window
+    private void onAnswerTimeout() {
+        if (state != RoundState.ANSWERING) {
+            return;
+        }
+        int clientID = answeringClient.getClientId();
+        eventLog.verdict(roomID, clientID, getCurrentQuestionNumber(), EventLog.TIMEOUT);
+        updateClientScore(answeringClient, -20);
+        try {
+            answeringClient.sendTimeout();
+        } catch (IOException e) {
+            System.err.println("Error sending TIMEOUT to client " + clientID);
+        }
+        answeringClient.clearAnswer();
+        offerNextBuzzer();
+    }
+
+    // Brief pause between questions
+    private void finishRound() {
+        enterState(RoundState.INTERMISSION);
+        deadline = schedule(guarded(this::nextQuestion), intermissionMillis);
+    }
+
+    // Moves to a new state; any deadline armed for the previous state is cancelled and, through the
+    // round sequence number, ignored even if it already started running
+    private void enterState(RoundState next) {
+        if (deadline != null) {
+            deadline.cancel();
+            deadline = null;
+        }
+        if (next != RoundState.ANSWERING) {
+            answeringClient = null;
+        }
+        state = next;
+        roundSequence++;
+    }
+
+    // Wraps an event so it runs under the room lock and only if the room has not moved on since it was armed
+    private Runnable guarded(Runnable event) {
+        long armedSequence = roundSequence;
+        return () -> {
+            synchronized (this) {
+                if (gameActive && roundSequence == armedSequence) {
+                    event.run();
+                }
+            }
+        };
+    }
+
+    private boolean hasMoreQuestions() {
+        return questionCursor.hasNext();
+    }
+
+    private GameClock.Timeout schedule(Runnable event, long delayMillis) {
+        return clock.schedule(event, delayMillis);
+    }
+
+    // Writes one encoded frame to every client in the room except the given one (-1 for nobody)
+    private void broadcast(EncodedMessage message, int exceptClientID) {
+        long start = System.nanoTime();
+        members.values().forEach(client -> {
+            if (client.getClientId() != exceptClientID) {
+                try {
+                    client.sendEncoded(message);
+                } catch (IOException e) {
+                    System.err.println("Error sending " + message.getType() + " to client " + client.getClientId());
+                }
+            }
+        });
+        Metrics.BROADCAST.recordSince(start);
+    }
+
+    // Encodes a message once and broadcasts the same bytes to the whole room
+    private void broadcast(TCPMessage message) {
+        try {
+            broadcast(EncodedMessage.of(message), -1);
+        } catch (IOException e) {
+            System.err.println("Error encoding " + message.getType() + ": " + e.getMessage());
+        }
+    }
+
+    // Broadcasts question to all clients in the room
+    private void broadcastQuestion(Question question) {
+        broadcast(new TCPMessage(TCPMessage.MessageType.QUESTION, question));
+    }
+
+    // The first change after a publish arms the next tick; later changes in the same tick ride along
+    private synchronized void scheduleScorePublish() {
+        if (!scorePublishPending) {
+            scorePublishPending = true;
+            schedule(this::publishScores, scoreTickMillis);
+        }
+    }
+
+    // Sends every member the players that changed since the version it last received
+    // Members on the same version share one encoded delta; members that never had a snapshot or lost score
+    // updates to their outbound queue get a full snapshot instead. A member whose last update is still queued
+    // gets a delta reaching back far enough to replace it.
+    private synchronized void publishScores() {
+        scorePublishPending = false;
+        long start = System.nanoTime();
+        long current = scoreboard.getVersion();
+        if (usesRankedWindows()) {
+            publishRankedWindows(current);
+            Metrics.SCORE_PUBLISH.recordSince(start);
+            return;
+        }
+        Map<Long, EncodedMessage> updates = new HashMap<>();
+        for (ClientConnection client : members.values()) {
+            long base = client.getScoreBase();
+            if (base == current) {
+                continue;
+            }
+            try {
+                client.sendEncoded(scoreUpdate(updates, base));
+                // A delta that displaced queued ones it does not cover leaves a gap; follow it with a snapshot
+                if (base >= 0 && client.getScoreBase() == -1) {
+                    client.sendEncoded(scoreUpdate(updates, -1));
+                }
+                client.setScoreVersion(current);
+            } catch (IOException e) {
+                System.err.println("Error sending scores to client " + client.getClientId());
+            }
+        }
+        Metrics.SCORE_PUBLISH.recordSince(start);
+    }
+
+    // Every window is complete on its own, so dropped updates need no snapshot to recover
+    private void publishRankedWindows(long current) {
+        for (ClientConnection client : members.values()) {
+            if (client.getScoreBase() == current) {
+                continue;
+            }
+            ScoreUpdate window = scoreboard.rankedWindow(client.getScoreSlot(), leaderboardTopK, leaderboardNeighbours);
+            try {
+                client.sendMessage(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, window));
+                client.setScoreVersion(current);
+            } catch (IOException e) {
+                System.err.println("Error sending scores to client " + client.getClientId());
+            }
+        }
+    }
+
+    private boolean usesRankedWindows() {
+        return scoreboard.size() > fullTableLimit;
+    }
+
+    private EncodedMessage scoreUpdate(Map<Long, EncodedMessage> updates, long base) throws IOException {
+        EncodedMessage update = updates.get(base);
+        if (update == null) {
+            update = EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, scoreboard.changesSince(base)),
+                                       base);
+            updates.put(base, update);
+        }
+        return update;
+    }
+
+    // Sends ELIGIBILITY message to clients allowing them to press the poll button
+    private void eligibility() {
+        broadcast(EncodedMessage.ELIGIBILITY, -1);
+    }
+
+    // Ends game, announces final scores and releases the room
+    private void endGame() {
+        enterState(RoundState.FINISHED);
+        gameActive = false;
+        eventLog.roomFinished(roomID);
+        publishScores(); // Final scores go out before GAME_OVER
+        members.values().forEach(client -> {
+            try {
+                client.sendGameOver();
+            } catch (IOException e) {
+                System.err.println("Error sending game over to client " + client.getClientId());
+            }
+        });
+
+        System.out.println("Room " + roomID + " game over! Final scores:");
+        ScoreUpdate finalScores = scoreboard.snapshot();
+        for (int i = 0; i < finalScores.size(); i++) {
+            System.out.println("Client " + finalScores.getPlayerId(i) + ": " + finalScores.getScore(i) + " points");
+        }
+        server.removeRoom(roomID);
+    }
+
+    // Clients disconnected across every room because their heartbeats stopped
+    public static long getHeartbeatDisconnects() {
+        return heartbeatDisconnects.get();
+    }
+
+    public int getRoomId() {
+        return roomID;
+    }
+
+    public BuzzQueue getBuzzQueue() {
+        return buzzQueue;
+    }
+
+    public Map<Integer, ClientConnection> getMembers() {
+        return members;
+    }
+
+    // Current question the room's game loop sent to its clients
+    public Question getCurrentQuestion() {
+        return currentQuestion;
+    }
+
+    public int getCurrentQuestionNumber() {
+        Question question = currentQuestion;
+        return question != null ? question.getQuestionNumber() : 0;
+    }
+}
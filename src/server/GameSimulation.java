@@ -0,0 +1,574 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import model.ClockReading;
+import model.FrameCodec;
+import model.PlayerAnswer;
+import model.Question;
+import model.QuestionBank;
+import model.TCPMessage;
+
+// Deterministic, accelerated simulation of whole games
+// Every seed builds a real server and room on a SimulatedClock and plays a game against in-memory players:
+// random join times, buzz races (including late, stale and repeated presses), right and wrong answers,
+// answers that miss the window, and players who drop mid-game or silently stop answering heartbeats.
+// Every player sits at its own distance from the server plus random jitter, and keeps a clock seconds off
+// the server's. Frames reach players in order on each connection. The room code is the production code;
+// only the clock and the transport are simulated, so a 20 question game runs in a few milliseconds of CPU.
+//
+// Each run checks that the game finishes and asks every question once (fewer only if everyone left), that
+// at most one player holds the floor at a time and every verdict follows an ACK, that the first ACK of a
+// question goes to whoever pressed first give or take the jitter, whatever their distance, that silent
+// players are disconnected within the heartbeat deadline, that every remaining player gets GAME_OVER, and
+// that the final scoreboard matches the verdicts players were told. A run depends on nothing but its seed,
+// so any failure can be replayed exactly, with the server's log and a frame trace, using --replay.
+//
+// Options: --seeds <count> --from <first seed> --players <max per game> --questions <per game>
+//          --latency <max jitter on top of each player's distance, millis>
+//          --verify (run every seed twice and compare) --replay <seed>
+public final class GameSimulation {
+    private static final long MAX_GAME_MILLIS = 24L * 3600 * 1000;
+    private static final long MIN_DISTANCE_MILLIS = 5;    // One-way latency before jitter, from the same city...
+    private static final long MAX_DISTANCE_MILLIS = 120;  // ...to the other side of the world; stays under buzz.settleMillis
+    private static final long MAX_CLOCK_SKEW_MILLIS = 5000;
+    private static final long WALL_CLOCK_BASE = 1_700_000_000_000L; // Player clocks read like wall clocks
+
+    private final ServerConfig baseConfig;
+    private final QuestionBank bank;
+    private final int maxPlayers;
+    private final int questions;
+    private final long maxLatencyMillis;
+
+    // Totals across every run
+    private long games, questionsAsked, acks, rights, wrongs, timeouts, disconnects, freezes, lateJoins, races, virtualMillis, tasks;
+
+    private GameSimulation(ServerConfig baseConfig, QuestionBank bank, int maxPlayers, int questions, long maxLatencyMillis) {
+        this.baseConfig = baseConfig;
+        this.bank = bank;
+        this.maxPlayers = maxPlayers;
+        this.questions = questions;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    // One simulated player, holding both what the server sent it and what it believes
+    private static final class Bot {
+        final int id;
+        final double buzzChance;
+        final double accuracy;
+        final long distanceMillis;    // One-way latency before jitter
+        final long clockSkewMillis;   // How far this player's clock is off the server's
+        Connection connection;
+        boolean connected = false;
+        boolean gameOver = false;
+        boolean frozen = false;       // Went silent without closing its connection, like a sleeping laptop
+        boolean holdsFloor = false;   // Received an ACK and no verdict yet
+        int toldScore = 0;            // Sum of the verdicts the server sent this player
+        Question question;
+        long lastDelivery = 0;
+        int buzzQuestion = 0;         // Question of this player's last buzz the server accepted...
+        long pressedAt;               // ...and when, in server time, it was really pressed
+
+        Bot(int id, Random random) {
+            this.id = id;
+            this.buzzChance = 0.3 + 0.65 * random.nextDouble();
+            this.accuracy = random.nextDouble();
+            this.distanceMillis = MIN_DISTANCE_MILLIS + (long) (random.nextDouble() * (MAX_DISTANCE_MILLIS - MIN_DISTANCE_MILLIS));
+            this.clockSkewMillis = (long) ((random.nextDouble() * 2 - 1) * MAX_CLOCK_SKEW_MILLIS);
+        }
+
+        // What this player's own clock reads at the given server time
+        long localTime(long serverTime) {
+            return serverTime + WALL_CLOCK_BASE + clockSkewMillis;
+        }
+    }
+
+    // Transport stand-in: frames are taken off the outbound queue as soon as the room queues them
+    private static final class Connection extends ClientConnection {
+        private final Run run;
+        private final Bot bot;
+        private final InetAddress address;
+
+        Connection(Run run, Bot bot) throws UnknownHostException {
+            super(bot.id, run.server, run.room);
+            this.run = run;
+            this.bot = bot;
+            this.address = InetAddress.getByAddress(new byte[] {10, 0, (byte) (bot.id >> 8), (byte) bot.id});
+        }
+
+        @Override
+        protected void requestFlush() {
+            OutboundQueue.Entry entry;
+            while ((entry = outbound.peek()) != null) {
+                outbound.remove(entry);
+                run.sent(bot, entry.message);
+            }
+        }
+
+        @Override
+        public String getClientIP() {
+            return address.getHostAddress();
+        }
+
+        @Override
+        public InetAddress getClientAddress() {
+            return address;
+        }
+
+        // Whoever drops the player, the bot forgets the floor before the room hands it to someone else
+        @Override
+        protected void onDisconnect(String reason) {
+            if (bot.connected) {
+                bot.connected = false;
+                if (run.floor == bot) {
+                    run.floor = null;
+                }
+                run.log("client " + bot.id + " disconnected: " + reason);
+            }
+            super.onDisconnect(reason);
+        }
+
+        @Override
+        protected void closeConnection() {
+        }
+    }
+
+    // One game, driven entirely by its seed
+    private final class Run {
+        final long seed;
+        final boolean verbose;
+        final Random random;
+        final SimulatedClock clock = new SimulatedClock();
+        final ServerTrivia server;
+        final GameRoom room;
+        final List<Bot> bots = new ArrayList<>();
+        final Set<Integer> questionsSeen = new HashSet<>();
+        final long buzzWindowMillis;
+        final long answerWindowMillis;
+        final long heartbeatIntervalMillis;
+        final long deadMillis;
+        Bot floor;                    // Player the server last ACKed, until its verdict or disconnect
+        int lastQuestion = 0;
+        int judgedQuestion = 0;       // Last question whose first ACK was checked for fairness
+        long trace = 1125899906842597L;
+        long acks, rights, wrongs, timeouts, disconnects, freezes, lateJoins, races;
+
+        Run(long seed, boolean verbose) {
+            this.seed = seed;
+            this.verbose = verbose;
+            this.random = new Random(seed);
+            int players = 1 + random.nextInt(maxPlayers);
+            ServerConfig config = baseConfig.copy()
+                    .set("wal.enabled", "false")
+                    .set("room.seed", Long.toString(seed))
+                    .set("room.capacity", Integer.toString(players))
+                    .set("room.questionsPerGame", Integer.toString(questions))
+                    .set("room.category", "")
+                    .set("room.difficulty", "");
+            server = new ServerTrivia(config, clock);
+            room = new GameRoom(1, server, bank, players);
+            server.getRooms().put(1, room);
+            buzzWindowMillis = config.getLong("room.buzzWindowMillis", 15000);
+            answerWindowMillis = config.getLong("room.answerWindowMillis", 10000);
+            heartbeatIntervalMillis = config.getLong("heartbeat.intervalMillis", 1000);
+            deadMillis = config.getLong("heartbeat.deadMillis", 5000);
+            long joinWaitMillis = config.getLong("room.joinWaitSeconds", 10) * 1000;
+
+            // The first player opens the room, as on the live server; most others arrive during the join wait
+            // and the rest drift in while the game runs
+            for (int id = 1; id <= players; id++) {
+                Bot bot = new Bot(id, random);
+                bots.add(bot);
+                boolean late = id > 1 && random.nextInt(4) == 0;
+                long joinAt = id == 1 ? 0
+                            : late ? joinWaitMillis + (long) (random.nextDouble() * questions * buzzWindowMillis)
+                                   : (long) (random.nextDouble() * joinWaitMillis);
+                clock.schedule(() -> join(bot, late), joinAt);
+            }
+            room.startGame(joinWaitMillis);
+        }
+
+        // Plays the game out; returns null when every check passed, otherwise what went wrong
+        String play() {
+            try {
+                while (clock.runNext()) {
+                    // Counted from the room rather than from frames, since a room whose players all left plays on
+                    int current = room.getCurrentQuestionNumber();
+                    if (current != lastQuestion) {
+                        check(questionsSeen.add(current), "question " + current + " asked twice");
+                        lastQuestion = current;
+                    }
+                    if (clock.currentTimeMillis() > MAX_GAME_MILLIS) {
+                        return "game still running after " + MAX_GAME_MILLIS / 1000 + " s of game time";
+                    }
+                }
+                check(server.getRooms().isEmpty(), "ran out of events before the game finished");
+                // A room nobody is left in may have ended early as idle; otherwise it asks every question
+                int expected = questions > 0 ? Math.min(questions, bank.size()) : bank.size();
+                boolean occupied = bots.stream().anyMatch(bot -> bot.connected);
+                check(questionsSeen.size() == expected || !occupied && questionsSeen.size() < expected,
+                      "asked " + questionsSeen.size() + " questions, expected " + expected);
+                for (Bot bot : bots) {
+                    if (!bot.connected) {
+                        continue;
+                    }
+                    check(bot.gameOver || bot.frozen, "client " + bot.id + " never got GAME_OVER");
+                    int score = room.getClientScore(bot.connection);
+                    check(score == bot.toldScore, "client " + bot.id + " has " + score +
+                                                  " points but its verdicts add up to " + bot.toldScore);
+                    trace = mix(trace, bot.id, score);
+                }
+                return null;
+            } catch (RuntimeException e) {
+                return e.toString();
+            }
+        }
+
+        private void join(Bot bot, boolean late) {
+            if (!room.isOpen()) {
+                return;
+            }
+            try {
+                bot.connection = new Connection(this, bot);
+                room.addClient(bot.connection);
+                server.addClient(bot.id, bot.connection);
+                bot.connected = true;
+                if (late) {
+                    lateJoins++;
+                }
+                log("client " + bot.id + " joins");
+                bot.connection.sendWelcome();
+            } catch (Exception e) {
+                throw new IllegalStateException("client " + bot.id + " could not join: " + e, e);
+            }
+        }
+
+        // Server side of the wire: the room just queued a frame for this player
+        void sent(Bot bot, EncodedMessage message) {
+            TCPMessage frame;
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.size());
+                message.writeTo(bytes);
+                frame = FrameCodec.nextFrame(ByteBuffer.wrap(bytes.toByteArray()));
+            } catch (Exception e) {
+                throw new IllegalStateException("undecodable " + message.getType() + " frame: " + e, e);
+            }
+            switch (frame.getType()) {
+                case ACK:
+                    check(floor == null, "client " + bot.id + " ACKed while client " +
+                                         (floor != null ? floor.id : 0) + " still holds the floor");
+                    floor = bot;
+                    acks++;
+                    judgeRace(bot);
+                    break;
+                case CORRECT:
+                case WRONG:
+                case TIMEOUT:
+                    check(floor == bot, frame.getType() + " sent to client " + bot.id + " without an ACK");
+                    floor = null;
+                    bot.toldScore += frame.getType() == TCPMessage.MessageType.CORRECT ? 10
+                                   : frame.getType() == TCPMessage.MessageType.WRONG ? -10 : -20;
+                    break;
+                default:
+                    break;
+            }
+            long deliverAt = Math.max(bot.lastDelivery, clock.currentTimeMillis() + oneWay(bot));
+            bot.lastDelivery = deliverAt;
+            clock.schedule(() -> deliver(bot, frame), deliverAt - clock.currentTimeMillis());
+        }
+
+        // Client side of the wire: the frame reaches the player, who reacts to it
+        private void deliver(Bot bot, TCPMessage frame) {
+            if (!bot.connected || bot.frozen) {
+                return;
+            }
+            TCPMessage.MessageType type = frame.getType();
+            Question question = type == TCPMessage.MessageType.QUESTION ? (Question) frame.getPayload() : null;
+            trace = mix(trace, clock.currentTimeMillis(), bot.id * 64L + type.ordinal(),
+                        question != null ? question.getQuestionNumber() : 0);
+            if (verbose && type != TCPMessage.MessageType.SCORE_UPDATE) {
+                log("client " + bot.id + " <- " + type + (question != null ? " Q" + question.getQuestionNumber() : ""));
+            }
+            switch (type) {
+                case PING:
+                    long local = bot.localTime(clock.currentTimeMillis());
+                    ClockReading reading = new ClockReading((Long) frame.getPayload(), local, local);
+                    clock.schedule(() -> {
+                        if (bot.connected && !bot.frozen) {
+                            bot.connection.onMessage(new TCPMessage(TCPMessage.MessageType.PONG, reading));
+                        }
+                    }, oneWay(bot));
+                    break;
+                case SESSION:
+                    int token = (Integer) frame.getPayload();
+                    check(server.getSessionTable().lookup(token) == bot.connection,
+                          "session token of client " + bot.id + " does not resolve to it");
+                    break;
+                case QUESTION:
+                    if (question != null) {
+                        bot.question = question;
+                        maybeDisconnect(bot);
+                    }
+                    break;
+                case ELIGIBILITY:
+                    if (bot.question != null && random.nextDouble() < bot.buzzChance) {
+                        int questionNumber = bot.question.getQuestionNumber();
+                        // Half race to press as soon as they can read it; of the rest, some land after the window
+                        // closed, and some players press twice
+                        long delay = random.nextBoolean() ? 200 + (long) (random.nextDouble() * 400)
+                                                          : (long) (random.nextDouble() * buzzWindowMillis * 1.2);
+                        clock.schedule(() -> buzz(bot, questionNumber), delay);
+                        if (random.nextInt(10) == 0) {
+                            clock.schedule(() -> buzz(bot, questionNumber), delay + random.nextInt(500));
+                        }
+                    }
+                    break;
+                case ACK:
+                    check(!bot.holdsFloor, "client " + bot.id + " got a second ACK before its verdict");
+                    bot.holdsFloor = true;
+                    // One in ten freezes; the others answer, sometimes too late
+                    if (random.nextInt(10) != 0) {
+                        Question asked = bot.question;
+                        char option = answerFor(bot, asked);
+                        long delay = (long) (random.nextDouble() * answerWindowMillis * 1.1);
+                        clock.schedule(() -> answer(bot, asked, option), delay);
+                    }
+                    break;
+                case CORRECT:
+                case WRONG:
+                case TIMEOUT:
+                    check(bot.holdsFloor, "client " + bot.id + " got " + type + " without an ACK");
+                    bot.holdsFloor = false;
+                    if (type == TCPMessage.MessageType.CORRECT) {
+                        rights++;
+                    } else if (type == TCPMessage.MessageType.WRONG) {
+                        wrongs++;
+                    } else {
+                        timeouts++;
+                    }
+                    break;
+                case GAME_OVER:
+                    bot.gameOver = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // The press is stamped with the player's own clock and reaches the server one network hop later
+        private void buzz(Bot bot, int questionNumber) {
+            if (!bot.connected || bot.frozen) {
+                return;
+            }
+            long pressedAt = clock.currentTimeMillis();
+            long timestamp = bot.localTime(pressedAt);
+            log("client " + bot.id + " buzzes Q" + questionNumber);
+            clock.schedule(() -> arrive(bot, questionNumber, timestamp, pressedAt), oneWay(bot));
+        }
+
+        // Goes through the same path as a datagram that passed the UDP listener's token and address checks
+        private void arrive(Bot bot, int questionNumber, long timestamp, long pressedAt) {
+            if (bot.connected && !bot.frozen
+                    && UDPThread.processBuzz(bot.connection, questionNumber, timestamp, System.nanoTime())) {
+                bot.buzzQuestion = questionNumber;
+                bot.pressedAt = pressedAt;
+            }
+        }
+
+        // The first ACK of a question must go to the earliest press among players the server could order:
+        // alive, with a measured clock offset, and whose buzz was accepted. Offset estimates are off by up to
+        // half the jitter, and a far player's press can be pulled forward by up to the jitter, hence the slack.
+        private void judgeRace(Bot winner) {
+            int current = room.getCurrentQuestionNumber();
+            if (current == judgedQuestion || winner.buzzQuestion != current) {
+                return;
+            }
+            judgedQuestion = current;
+            races++;
+            long slack = 2 * maxLatencyMillis + 2;
+            for (Bot other : bots) {
+                if (other == winner || other.buzzQuestion != current || !other.connected || other.frozen
+                        || other.connection.getLiveness() != ClientConnection.Liveness.ALIVE
+                        || !other.connection.isClockSynced()) {
+                    continue;
+                }
+                check(winner.pressedAt <= other.pressedAt + slack,
+                      "client " + winner.id + " (pressed at " + winner.pressedAt + ", " + winner.distanceMillis +
+                      " ms away) won Q" + current + " over client " + other.id + " (pressed at " + other.pressedAt +
+                      ", " + other.distanceMillis + " ms away)");
+            }
+        }
+
+        // Delay of one hop between the server and this player
+        private long oneWay(Bot bot) {
+            return bot.distanceMillis + (long) (random.nextDouble() * maxLatencyMillis);
+        }
+
+        private void answer(Bot bot, Question question, char option) {
+            if (bot.connected && !bot.frozen) {
+                log("client " + bot.id + " answers " + option + " to Q" + question.getQuestionNumber());
+                bot.connection.onMessage(new TCPMessage(TCPMessage.MessageType.ANSWER,
+                                                        new PlayerAnswer(question.getQuestionNumber(), option)));
+            }
+        }
+
+        private char answerFor(Bot bot, Question question) {
+            char correct = bank.getCorrectAnswer(question.getQuestionNumber()); // Not sent to clients
+            if (random.nextDouble() < bot.accuracy) {
+                return correct;
+            }
+            int options = Math.max(2, question.getOptions().length);
+            char wrong = (char) ('A' + random.nextInt(options - 1));
+            return wrong >= correct ? (char) (wrong + 1) : wrong;
+        }
+
+        // A few players drop out at a random point of the game, some of them while holding the floor; half
+        // close their connection, the other half just go silent and have to be found by the heartbeat
+        private void maybeDisconnect(Bot bot) {
+            if (random.nextInt(50) != 0) {
+                return;
+            }
+            boolean freeze = random.nextBoolean();
+            clock.schedule(() -> {
+                if (!bot.connected || bot.gameOver) {
+                    return;
+                }
+                if (!freeze) {
+                    disconnects++;
+                    bot.connection.onDisconnect("simulated disconnect");
+                    return;
+                }
+                log("client " + bot.id + " goes silent");
+                bot.frozen = true;
+                freezes++;
+                if (heartbeatIntervalMillis > 0) {
+                    // Its last PONG may still be in flight, and the sweep only looks once per interval
+                    long detectBy = deadMillis + heartbeatIntervalMillis + bot.distanceMillis + maxLatencyMillis + 1;
+                    clock.schedule(() -> check(!server.getActiveClients().containsKey(bot.id) || server.getRooms().isEmpty(),
+                                               "client " + bot.id + " still connected " + detectBy + " ms after going silent"),
+                                   detectBy);
+                }
+            }, (long) (random.nextDouble() * (buzzWindowMillis + answerWindowMillis)));
+        }
+
+        private void check(boolean condition, String violation) {
+            if (!condition) {
+                throw new IllegalStateException(violation + " at t=" + clock.currentTimeMillis() + " ms");
+            }
+        }
+
+        private void log(String event) {
+            if (verbose) {
+                STDOUT.printf(Locale.ROOT, "[%9.3f s] %s%n", clock.currentTimeMillis() / 1000.0, event);
+            }
+        }
+    }
+
+    private static final PrintStream STDOUT = System.out;
+
+    private static long mix(long hash, long... values) {
+        for (long value : values) {
+            hash = (hash ^ value) * 0x100000001b3L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    // Runs one seed with the server's own output silenced; returns the failure, or null
+    private String simulate(long seed, boolean verify) {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            Run run = new Run(seed, false);
+            String failure = run.play();
+            if (failure == null && verify) {
+                Run again = new Run(seed, false);
+                failure = again.play();
+                if (failure == null && again.trace != run.trace) {
+                    failure = "second run of the same seed took a different course";
+                }
+            }
+            games++;
+            questionsAsked += run.questionsSeen.size();
+            acks += run.acks;
+            rights += run.rights;
+            wrongs += run.wrongs;
+            timeouts += run.timeouts;
+            disconnects += run.disconnects;
+            freezes += run.freezes;
+            lateJoins += run.lateJoins;
+            races += run.races;
+            virtualMillis += run.clock.currentTimeMillis();
+            tasks += run.clock.getExecuted();
+            return failure;
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+    }
+
+    public static void main(String[] args) {
+        int seeds = 1000;
+        long from = 1;
+        int players = 8;
+        int questions = 20;
+        long latency = 40;
+        boolean verify = false;
+        Long replay = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seeds": seeds = Integer.parseInt(args[++i]); break;
+                case "--from": from = Long.parseLong(args[++i]); break;
+                case "--players": players = Math.max(1, Integer.parseInt(args[++i])); break;
+                case "--questions": questions = Integer.parseInt(args[++i]); break;
+                case "--latency": latency = Math.max(0, Long.parseLong(args[++i])); break;
+                case "--verify": verify = true; break;
+                case "--replay": replay = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        GameSimulation simulation = new GameSimulation(ServerConfig.load(), new QuestionBank(), players, questions, latency);
+        if (replay != null) {
+            Run run = simulation.new Run(replay, true);
+            String failure = run.play();
+            System.out.println(failure == null ? "Seed " + replay + " passed" : "Seed " + replay + " FAILED: " + failure);
+            System.exit(failure == null ? 0 : 1);
+        }
+
+        long start = System.nanoTime();
+        int failures = 0;
+        for (long seed = from; seed < from + seeds; seed++) {
+            String failure = simulation.simulate(seed, verify);
+            if (failure != null) {
+                failures++;
+                System.out.println("Seed " + seed + " FAILED: " + failure + " (replay with --replay " + seed + ")");
+            }
+        }
+        double cpuMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf(Locale.ROOT, "%d games, %d questions, %d buzz races judged, %d ACKs (%d right, %d wrong, %d timeouts), %d late joins, %d disconnects, %d gone silent%n",
+                          simulation.games, simulation.questionsAsked, simulation.races, simulation.acks, simulation.rights,
+                          simulation.wrongs, simulation.timeouts, simulation.lateJoins, simulation.disconnects,
+                          simulation.freezes);
+        System.out.printf(Locale.ROOT, "%.1f hours of game time in %.0f ms (%.2f ms per game, %d events)%s%n",
+                          simulation.virtualMillis / 3.6e6, cpuMillis, cpuMillis / Math.max(1, simulation.games),
+                          simulation.tasks, verify && failures == 0 ? ", every seed replayed identically" : "");
+        System.out.println(failures == 0 ? "All seeds passed" : failures + " seeds FAILED");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,292 @@
+package server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+import com.sun.net.httpserver.HttpServer;
+
+import model.LatencyHistogram;
+
+// Server-wide latency histograms and gauges
+// Hot paths record into the static histograms below; start() adds gauges read from the running server and
+// publishes everything as Prometheus text on http://<metrics.bind>:<metrics.port>/metrics and as the JMX
+// bean trivia:type=Metrics. Reading the metrics never takes a room or connection lock.
+public final class Metrics {
+    public static final LatencyHistogram BUZZ_INGEST = new LatencyHistogram(
+            "trivia_buzz_ingest_seconds", "UDP buzz received to queued in the room's buzz queue");
+    public static final LatencyHistogram BUZZ_COMPENSATION = new LatencyHistogram(
+            "trivia_buzz_compensation_seconds", "How far before its arrival a buzz was placed, from the client's clock offset");
+    public static final LatencyHistogram BUZZ_TO_ACK = new LatencyHistogram(
+            "trivia_buzz_to_ack_seconds", "Buzz queued to ACK sent to the answering player");
+    public static final LatencyHistogram ANSWER_TO_VERDICT = new LatencyHistogram(
+            "trivia_answer_to_verdict_seconds", "Answer frame decoded to verdict queued");
+    public static final LatencyHistogram BROADCAST = new LatencyHistogram(
+            "trivia_broadcast_seconds", "Fan-out of one frame to every member of a room");
+    public static final LatencyHistogram SCORE_PUBLISH = new LatencyHistogram(
+            "trivia_score_publish_seconds", "One scoreboard publish to every member of a room");
+    public static final LatencyHistogram CLIENT_SEND = new LatencyHistogram(
+            "trivia_client_send_seconds", "Frame queued for a client to fully written to its socket");
+
+    private static final LatencyHistogram[] HISTOGRAMS = {
+        BUZZ_INGEST, BUZZ_COMPENSATION, BUZZ_TO_ACK, ANSWER_TO_VERDICT, BROADCAST, SCORE_PUBLISH, CLIENT_SEND
+    };
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, Gauge> gauges = new LinkedHashMap<>();
+    private static HttpServer httpServer;
+
+    private Metrics() {
+    }
+
+    private static final class Gauge {
+        final String help;
+        final boolean counter;
+        final LongSupplier value;
+
+        Gauge(String help, boolean counter, LongSupplier value) {
+            this.help = help;
+            this.counter = counter;
+            this.value = value;
+        }
+    }
+
+    // Registers the server's gauges and opens the HTTP endpoint and the JMX bean
+    public static synchronized void start(ServerTrivia server) {
+        gauges.clear();
+        gauge("trivia_active_clients", "Connected clients", () -> server.getActiveClients().size());
+        gauge("trivia_rooms", "Rooms hosting a game", () -> server.getRooms().size());
+        gauge("trivia_buzz_queue_depth", "Buzzes received for the current question across every room", () -> {
+            long depth = 0;
+            for (GameRoom room : server.getRooms().values()) {
+                depth += room.getBuzzQueue().getBuzzCount();
+            }
+            return depth;
+        });
+        gauge("trivia_outbound_queued", "Frames waiting in client outbound queues", OutboundQueue::getTotalQueued);
+        counter("trivia_outbound_dropped_total", "Score updates dropped by slow-consumer handling",
+                OutboundQueue::getDroppedMessages);
+        counter("trivia_outbound_coalesced_total", "Score updates replaced by a newer one",
+                OutboundQueue::getCoalescedMessages);
+        counter("trivia_outbound_evictions_total", "Clients disconnected as slow consumers", OutboundQueue::getEvictions);
+        counter("trivia_heartbeat_disconnects_total", "Clients disconnected after their heartbeats stopped",
+                GameRoom::getHeartbeatDisconnects);
+        if (server.getScheduler() instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor scheduler = (ThreadPoolExecutor) server.getScheduler();
+            gauge("trivia_scheduler_queue_depth", "Room deadlines due and waiting for a thread", () -> scheduler.getQueue().size());
+            gauge("trivia_scheduler_active_threads", "Scheduler threads running a deadline", scheduler::getActiveCount);
+        }
+        gauge("trivia_timer_pending", "Deadlines armed on the room timing wheel", server.getTimer()::getPending);
+        UdpIngest udp = server.getUdpIngest();
+        if (udp != null) {
+            // Per receiver, so rate() shows whether SO_REUSEPORT spreads senders evenly
+            for (UDPThread receiver : udp.getReceivers()) {
+                counter("trivia_udp_packets_total{receiver=\"" + receiver.getReceiver() + "\"}",
+                        "Datagrams read by each UDP receiver", receiver::getPackets);
+            }
+            for (UDPThread receiver : udp.getReceivers()) {
+                counter("trivia_udp_rejected_total{receiver=\"" + receiver.getReceiver() + "\"}",
+                        "Datagrams dropped as malformed or failing the session check", receiver::getRejected);
+            }
+            for (UDPThread receiver : udp.getReceivers()) {
+                counter("trivia_udp_rate_limited_total{receiver=\"" + receiver.getReceiver() + "\"}",
+                        "Datagrams dropped unread because their sender was over its buzz rate limit", receiver::getRateLimited);
+            }
+            for (UDPThread receiver : udp.getReceivers()) {
+                if (receiver.getRateLimiter() != null) {
+                    gauge("trivia_udp_rate_limit_senders{receiver=\"" + receiver.getReceiver() + "\"}",
+                          "Sources and addresses tracked in each receiver's rate limit table", receiver.getRateLimiter()::getUsed);
+                }
+            }
+            for (UDPThread receiver : udp.getReceivers()) {
+                if (receiver.getRateLimiter() != null) {
+                    counter("trivia_udp_rate_limit_overflow_total{receiver=\"" + receiver.getReceiver() + "\"}",
+                            "Datagrams from senders that found no free slot and shared the overflow bucket",
+                            receiver.getRateLimiter()::getOverflowed);
+                }
+            }
+            gauge("trivia_udp_receive_buffer_bytes", "SO_RCVBUF granted to each UDP socket", udp::getReceiveBufferBytes);
+            if (udp.getKernelDrops() >= 0) {
+                counter("trivia_udp_kernel_drops_total", "Datagrams the kernel dropped on the buzz port with a full receive buffer",
+                        udp::getKernelDrops);
+                gauge("trivia_udp_kernel_queued_bytes", "Bytes waiting in the buzz port's socket receive buffers",
+                      udp::getKernelQueuedBytes);
+            }
+        }
+        if (server.getExecutorService() instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) server.getExecutorService();
+            gauge("trivia_pool_threads", "Threads in the client handler pool", pool::getPoolSize);
+            gauge("trivia_pool_active_threads", "Client handler pool threads running a task", pool::getActiveCount);
+        }
+        gauge("jvm_threads", "Live JVM threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm_heap_used_bytes", "Heap in use", () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+
+        ServerConfig config = server.getConfig();
+        int port = config.getInt("metrics.port", 9400);
+        if (port > 0) {
+            String bind = config.getString("metrics.bind", "127.0.0.1");
+            try {
+                httpServer = HttpServer.create(new InetSocketAddress(bind, port), 0);
+                httpServer.createContext("/metrics", exchange -> {
+                    byte[] body = prometheusText().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                });
+                httpServer.start();
+                System.out.println("Metrics available on http://" + bind + ":" + port + "/metrics");
+            } catch (IOException e) {
+                System.err.println("Metrics endpoint unavailable: " + e.getMessage());
+            }
+        }
+        if (config.getBoolean("metrics.jmx", true)) {
+            try {
+                ObjectName name = new ObjectName("trivia:type=Metrics");
+                if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), name);
+                }
+            } catch (JMException e) {
+                System.err.println("Metrics JMX bean unavailable: " + e.getMessage());
+            }
+        }
+    }
+
+    public static synchronized void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    private static void gauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, false, value));
+    }
+
+    private static void counter(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, true, value));
+    }
+
+    // Prometheus text exposition: histograms as summaries in seconds, then every gauge and counter
+    // A name may end in {labels}; samples of one metric are registered together and share its HELP and TYPE
+    static synchronized String prometheusText() {
+        StringBuilder text = new StringBuilder(4096);
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            String name = histogram.getName();
+            text.append("# HELP ").append(name).append(' ').append(histogram.getHelp()).append('\n');
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.valueAtQuantile(quantile))).append('\n');
+            }
+            text.append(name).append("_sum ").append(seconds(histogram.getSum())).append('\n');
+            text.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            text.append("# HELP ").append(name).append("_max Largest value recorded\n");
+            text.append("# TYPE ").append(name).append("_max gauge\n");
+            text.append(name).append("_max ").append(seconds(histogram.getMax())).append('\n');
+        }
+        String family = null;
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            Gauge gauge = entry.getValue();
+            String name = entry.getKey();
+            int labels = name.indexOf('{');
+            String metric = labels < 0 ? name : name.substring(0, labels);
+            if (!metric.equals(family)) {
+                text.append("# HELP ").append(metric).append(' ').append(gauge.help).append('\n');
+                text.append("# TYPE ").append(metric).append(gauge.counter ? " counter\n" : " gauge\n");
+                family = metric;
+            }
+            text.append(name).append(' ').append(gauge.value.getAsLong()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    // Flat, read-only view for JMX: every gauge, plus count, p50, p99, p999 and max (microseconds) per histogram
+    private static Map<String, LongSupplier> attributes() {
+        Map<String, LongSupplier> attributes = new LinkedHashMap<>();
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            String name = histogram.getName().replace("_seconds", "");
+            attributes.put(name + "_count", histogram::getCount);
+            attributes.put(name + "_p50_micros", () -> histogram.valueAtQuantile(0.5) / 1000);
+            attributes.put(name + "_p99_micros", () -> histogram.valueAtQuantile(0.99) / 1000);
+            attributes.put(name + "_p999_micros", () -> histogram.valueAtQuantile(0.999) / 1000);
+            attributes.put(name + "_max_micros", () -> histogram.getMax() / 1000);
+        }
+        synchronized (Metrics.class) {
+            // trivia_udp_packets_total{receiver="0"} becomes trivia_udp_packets_total_receiver_0
+            gauges.forEach((name, gauge) -> attributes.put(name.replaceAll("\\{(\\w+)=\"([^\"]*)\"\\}", "_$1_$2"), gauge.value));
+        }
+        return attributes;
+    }
+
+    private static final class MetricsBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier value = attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value.getAsLong();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, LongSupplier> attributes = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                LongSupplier value = attributes.get(name);
+                if (value != null) {
+                    list.add(new Attribute(name, value.getAsLong()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(action);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (String name : attributes().keySet()) {
+                infos.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+            }
+            return new MBeanInfo(MetricsBean.class.getName(), "Trivia server latencies and gauges",
+                                 infos.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import model.FrameCodec;
+import model.TCPMessage;
+
+// A client served by a shared NioEventLoop instead of its own thread
+// Inbound bytes are framed on the event loop; outbound frames are queued by any thread and written
+// by the event loop once the socket is writable
+public class NioConnection extends ClientConnection {
+    private final SocketChannel channel;
+    private final NioEventLoop eventLoop;
+    private final InetAddress clientAddress;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+    private final ByteBuffer[] writeBatch = new ByteBuffer[64];
+    private final OutboundQueue.Entry[] writeEntries = new OutboundQueue.Entry[64];
+    private SelectionKey key;
+
+    public NioConnection(SocketChannel channel, int id, ServerTrivia server, GameRoom room, NioEventLoop eventLoop) {
+        super(id, server, room);
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.clientAddress = channel.socket().getInetAddress();
+    }
+
+    // Asks the event loop to write out queued frames
+    @Override
+    protected void requestFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.requestFlush(this);
+        }
+    }
+
+    // Called by the event loop once the channel is registered with its selector
+    void onRegistered(SelectionKey key) {
+        this.key = key;
+        try {
+            sendWelcome();
+        } catch (IOException e) {
+            onDisconnect(e.getMessage());
+        }
+    }
+
+    // Reads whatever is available and dispatches every complete frame
+    void onReadable() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                onDisconnect("connection closed");
+                return;
+            }
+            readBuffer.flip();
+            TCPMessage message;
+            while ((message = FrameCodec.nextFrame(readBuffer)) != null) {
+                onMessage(message);
+            }
+            readBuffer.compact();
+            ensureCapacity();
+        } catch (IOException e) {
+            onDisconnect(e.getMessage());
+        }
+    }
+
+    // Grows the read buffer when a single frame is larger than what it can hold
+    private void ensureCapacity() throws IOException {
+        if (readBuffer.hasRemaining()) {
+            return;
+        }
+        if (readBuffer.capacity() >= FrameCodec.MAX_FRAME_SIZE) {
+            throw new IOException("Frame too large");
+        }
+        ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        readBuffer.flip();
+        larger.put(readBuffer);
+        readBuffer = larger;
+    }
+
+    // Writes queued frames until the queue is empty or the socket buffer is full
+    // Several frames go out in one gathering write instead of one write call per frame
+    void onWritable() {
+        if (key == null) {
+            // Not registered yet; onRegistered flushes once the welcome messages are queued
+            flushScheduled.set(false);
+            return;
+        }
+        try {
+            while (!outbound.isEmpty()) {
+                int count = outbound.peekBatch(writeEntries, writeBatch);
+                channel.write(writeBatch, 0, count);
+                for (int i = 0; i < count; i++) {
+                    boolean written = !writeBatch[i].hasRemaining();
+                    if (written) {
+                        outbound.remove(writeEntries[i]);
+                        writeBatch[i] = null;
+                        writeEntries[i] = null;
+                    } else {
+                        // Socket buffer is full; hand the rest back and wait for the selector to report it
+                        // writable again
+                        for (int j = i; j < count; j++) {
+                            outbound.release(writeEntries[j]);
+                        }
+                        Arrays.fill(writeBatch, i, count, null);
+                        Arrays.fill(writeEntries, i, count, null);
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            flushScheduled.set(false);
+            // A sender may have queued a frame after the loop saw an empty queue
+            if (!outbound.isEmpty() && flushScheduled.compareAndSet(false, true)) {
+                onWritable();
+            }
+        } catch (IOException e) {
+            onDisconnect(e.getMessage());
+        }
+    }
+
+    @Override
+    protected void closeConnection() {
+        try {
+            if (key != null) key.cancel();
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection for client " + id);
+        }
+    }
+
+    @Override
+    public String getClientIP() {
+        return clientAddress.getHostAddress();
+    }
+
+    @Override
+    public InetAddress getClientAddress() {
+        return clientAddress;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+}
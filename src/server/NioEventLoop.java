@@ -0,0 +1,110 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// One selector thread serving many NioConnections
+// Other threads never touch the selector directly: they queue registrations and flush requests and
+// wake the loop, which applies them on its own thread
+public class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final int loopIndex;
+    private final Queue<NioConnection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+    private final Queue<NioConnection> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    public NioEventLoop(int loopIndex) throws IOException {
+        this.loopIndex = loopIndex;
+        this.selector = Selector.open();
+    }
+
+    // Hands a freshly accepted connection to this loop
+    public void register(NioConnection connection) {
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+    }
+
+    // Asks the loop to start writing a connection's queued frames
+    void requestFlush(NioConnection connection) {
+        pendingFlushes.add(connection);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        Thread.currentThread().setName("nio-loop-" + loopIndex);
+        while (running) {
+            try {
+                selector.select();
+                applyRegistrations();
+                applyFlushes();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (CancelledKeyException e) {
+                        connection.onDisconnect("connection closed");
+                    } catch (RuntimeException e) {
+                        failed(connection, e);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error in NIO event loop " + loopIndex + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void applyRegistrations() {
+        NioConnection connection;
+        while ((connection = pendingRegistrations.poll()) != null) {
+            try {
+                connection.getChannel().configureBlocking(false);
+                SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.onRegistered(key);
+            } catch (IOException e) {
+                connection.onDisconnect(e.getMessage());
+            } catch (RuntimeException e) {
+                failed(connection, e);
+            }
+        }
+    }
+
+    private void applyFlushes() {
+        NioConnection connection;
+        while ((connection = pendingFlushes.poll()) != null) {
+            try {
+                connection.onWritable();
+            } catch (CancelledKeyException e) {
+                connection.onDisconnect("connection closed");
+            } catch (RuntimeException e) {
+                failed(connection, e);
+            }
+        }
+    }
+
+    // An unexpected error while serving one connection drops that connection only; letting it escape would
+    // end this thread and silently stop every other connection on the loop
+    private void failed(NioConnection connection, RuntimeException e) {
+        System.err.println("Error serving client " + connection.getClientId() + " on NIO event loop " + loopIndex + ": " + e);
+        connection.onDisconnect("internal error");
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+}
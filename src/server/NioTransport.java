@@ -0,0 +1,36 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+
+// Optional non-blocking transport: a small fixed set of NioEventLoops shares every client connection
+// instead of parking one blocked thread per client in ClientThread
+public class NioTransport {
+    private final NioEventLoop[] eventLoops;
+    private int nextLoop = 0;
+
+    public NioTransport(int loopCount, ExecutorService executorService) throws IOException {
+        eventLoops = new NioEventLoop[Math.max(1, loopCount)];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop(i);
+            executorService.submit(eventLoops[i]);
+        }
+        System.out.println("NIO transport started with " + eventLoops.length + " event loops");
+    }
+
+    // Wraps an accepted channel and spreads connections over the loops round-robin
+    public NioConnection accept(SocketChannel channel, int clientID, ServerTrivia server, GameRoom room) {
+        NioEventLoop eventLoop = eventLoops[nextLoop];
+        nextLoop = (nextLoop + 1) % eventLoops.length;
+        NioConnection connection = new NioConnection(channel, clientID, server, room, eventLoop);
+        eventLoop.register(connection);
+        return connection;
+    }
+
+    public void shutdown() {
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown();
+        }
+    }
+}
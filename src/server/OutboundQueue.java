@@ -0,0 +1,206 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.TCPMessage;
+
+// Bounded queue of frames waiting to be written to one client
+// The game loop only ever enqueues; the transport drains the queue on its own thread, so a client with a
+// stalled TCP window fills its own queue instead of blocking the room. What happens once the queue passes
+// its high-water mark is decided by the slow-consumer policy.
+public class OutboundQueue {
+
+    public enum Policy {
+        DROP_STALE_SCORES, // Over the mark, discard queued score updates (a newer one supersedes them)
+        COALESCE,          // Always keep at most one pending score update; over the mark, disconnect
+        DISCONNECT;        // Over the mark, disconnect the client straight away
+
+        public static Policy parse(String value) {
+            for (Policy policy : values()) {
+                if (policy.name().equalsIgnoreCase(value)) {
+                    return policy;
+                }
+            }
+            return DROP_STALE_SCORES;
+        }
+    }
+
+    // Server-wide counters, read by the metrics endpoint
+    private static final AtomicLong totalQueued = new AtomicLong();
+    private static final AtomicLong droppedMessages = new AtomicLong();
+    private static final AtomicLong coalescedMessages = new AtomicLong();
+    private static final AtomicLong evictions = new AtomicLong();
+
+    // One queued frame; the buffer view is created when the transport first starts writing it
+    static final class Entry {
+        final EncodedMessage message;
+        final long queuedAt = System.nanoTime();
+        ByteBuffer view;
+        boolean inFlight = false; // Handed to a writer that is outside the lock; guarded by the queue
+
+        Entry(EncodedMessage message) {
+            this.message = message;
+        }
+
+        ByteBuffer view() {
+            if (view == null) {
+                view = message.buffer();
+            }
+            return view;
+        }
+
+        // A frame a writer holds or that is partly on the wire must be finished, never dropped or replaced
+        boolean started() {
+            return inFlight || view != null && view.position() > 0;
+        }
+
+        boolean isScoreUpdate() {
+            return message.getType() == TCPMessage.MessageType.SCORE_UPDATE;
+        }
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final Policy policy;
+    private final int highWaterMark;
+    private boolean evicted = false;
+    private boolean scoresDropped = false;
+
+    public OutboundQueue(Policy policy, int highWaterMark) {
+        this.policy = policy;
+        this.highWaterMark = Math.max(1, highWaterMark);
+    }
+
+    // Queues a frame; returns false once the client has to be disconnected as a slow consumer
+    public synchronized boolean offer(EncodedMessage message) {
+        if (evicted) {
+            return false;
+        }
+        Entry entry = new Entry(message);
+        if (policy == Policy.COALESCE && entry.isScoreUpdate()) {
+            removePendingScoreUpdates(message, coalescedMessages);
+        }
+        if (entries.size() >= highWaterMark) {
+            if (policy == Policy.DROP_STALE_SCORES) {
+                removePendingScoreUpdates(message, droppedMessages);
+            }
+            if (entries.size() >= highWaterMark) {
+                evicted = true;
+                evictions.incrementAndGet();
+                totalQueued.addAndGet(-entries.size());
+                entries.clear();
+                return false;
+            }
+        }
+        // A complete score update covers whatever was dropped before it, so no snapshot has to follow
+        if (entry.isScoreUpdate() && message.getScoreBase() < 0) {
+            scoresDropped = false;
+        }
+        entries.add(entry);
+        totalQueued.incrementAndGet();
+        return true;
+    }
+
+    // Drops score updates that have not started going out; the newest one always follows them, and only
+    // when the frame being offered does not carry everything a dropped one did does the client need a snapshot
+    private void removePendingScoreUpdates(EncodedMessage offered, AtomicLong counter) {
+        Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            Entry queued = iterator.next();
+            if (queued.isScoreUpdate() && !queued.started()) {
+                iterator.remove();
+                scoresDropped |= !offered.covers(queued.message);
+                totalQueued.decrementAndGet();
+                counter.incrementAndGet();
+            }
+        }
+    }
+
+    // Hands the oldest frames to a writer for one gathering write, filling both arrays; returns how many
+    // Every entry handed out is in flight until the writer removes or releases it
+    synchronized int peekBatch(Entry[] inFlight, ByteBuffer[] batch) {
+        int count = 0;
+        for (Entry entry : entries) {
+            entry.inFlight = true;
+            inFlight[count] = entry;
+            batch[count++] = entry.view();
+            if (count == batch.length) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    // Hands the oldest frame to the blocking writer, or returns null when the queue is empty
+    synchronized Entry peek() {
+        Entry entry = entries.peek();
+        if (entry != null) {
+            entry.inFlight = true;
+        }
+        return entry;
+    }
+
+    // Removes a frame handed out by peek or peekBatch once it has been fully written; a queue evicted in the
+    // meantime no longer holds it
+    synchronized void remove(Entry written) {
+        if (entries.peek() == written ? entries.poll() != null : entries.remove(written)) {
+            totalQueued.decrementAndGet();
+            Metrics.CLIENT_SEND.recordSince(written.queuedAt);
+        }
+    }
+
+    // Gives back a frame handed out but not written; it may be dropped again unless part of it went out
+    synchronized void release(Entry unwritten) {
+        unwritten.inFlight = false;
+    }
+
+    // Base the next score delta must be computed from, given the version last queued for this client:
+    // under COALESCE it replaces every score update that has not started going out, so it has to reach back
+    // to the oldest base among them (-1, a snapshot, if one of them is)
+    synchronized long scoreBase(long queuedVersion) {
+        long base = queuedVersion;
+        if (policy == Policy.COALESCE) {
+            for (Entry queued : entries) {
+                if (queued.isScoreUpdate() && !queued.started()) {
+                    base = Math.min(base, queued.message.getScoreBase());
+                }
+            }
+        }
+        return base;
+    }
+
+    // True once if score updates were dropped or coalesced since the last call and no complete one has been
+    // queued since; score deltas build on each other, so the client then needs a full snapshot to catch up
+    public synchronized boolean takeScoresDropped() {
+        boolean dropped = scoresDropped;
+        scoresDropped = false;
+        return dropped;
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Frames queued across every connection in the server
+    public static long getTotalQueued() {
+        return totalQueued.get();
+    }
+
+    public static long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public static long getCoalescedMessages() {
+        return coalescedMessages.get();
+    }
+
+    public static long getEvictions() {
+        return evictions.get();
+    }
+}
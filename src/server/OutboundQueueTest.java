@@ -0,0 +1,183 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.ScoreUpdate;
+import model.TCPMessage;
+
+// Checks that frames handed to a writer outside the queue lock are never dropped, replaced or mistaken for
+// another frame when the game loop offers more frames while the write is in progress
+// Usage: java -cp out server.OutboundQueueTest
+public class OutboundQueueTest {
+
+    public static void main(String[] args) throws Exception {
+        coalesceWhileWriting();
+        dropStaleScoresWhileWriting();
+        batchReleasedAfterShortWrite();
+        coalescingNeedsNoSnapshot();
+        concurrentOfferAndDrain(OutboundQueue.Policy.COALESCE);
+        concurrentOfferAndDrain(OutboundQueue.Policy.DROP_STALE_SCORES);
+        System.out.println("OutboundQueueTest passed");
+    }
+
+    // The writer holds S1 while ACK and S2 are offered; coalescing must not touch S1, and removing S1 must
+    // leave ACK at the head
+    private static void coalesceWhileWriting() throws IOException {
+        OutboundQueue queue = new OutboundQueue(OutboundQueue.Policy.COALESCE, 16);
+        EncodedMessage s1 = score(1);
+        EncodedMessage s2 = score(2);
+        queue.offer(s1);
+        OutboundQueue.Entry writing = queue.peek();
+        queue.offer(EncodedMessage.ACK);
+        queue.offer(s2);
+        queue.remove(writing);
+        expectDrain(queue, EncodedMessage.ACK, s2);
+    }
+
+    // At the high-water mark only score updates nobody is writing may go
+    private static void dropStaleScoresWhileWriting() throws IOException {
+        OutboundQueue queue = new OutboundQueue(OutboundQueue.Policy.DROP_STALE_SCORES, 3);
+        EncodedMessage s1 = score(1);
+        EncodedMessage s2 = score(2);
+        queue.offer(s1);
+        OutboundQueue.Entry writing = queue.peek();
+        queue.offer(EncodedMessage.ELIGIBILITY);
+        queue.offer(s2);
+        check(queue.offer(EncodedMessage.ACK), "queue evicted although a stale score update could go");
+        queue.remove(writing);
+        expectDrain(queue, EncodedMessage.ELIGIBILITY, EncodedMessage.ACK);
+    }
+
+    // A gathering write that stopped early gives the unwritten frames back, and they can be dropped again
+    private static void batchReleasedAfterShortWrite() throws IOException {
+        OutboundQueue queue = new OutboundQueue(OutboundQueue.Policy.COALESCE, 16);
+        EncodedMessage s1 = score(1);
+        EncodedMessage s2 = score(2);
+        EncodedMessage s3 = score(3);
+        queue.offer(EncodedMessage.ACK);
+        queue.offer(s1);
+        OutboundQueue.Entry[] entries = new OutboundQueue.Entry[4];
+        ByteBuffer[] batch = new ByteBuffer[4];
+        int count = queue.peekBatch(entries, batch);
+        check(count == 2, "batch of " + count + " frames, expected 2");
+        queue.offer(s2); // S1 is in flight, so it survives the coalesce
+        check(queue.size() == 3, "in-flight score update coalesced away");
+        // The first frame went out whole, the second not at all
+        batch[0].position(batch[0].limit());
+        queue.remove(entries[0]);
+        queue.release(entries[1]);
+        queue.offer(s3); // S1 was given back untouched, so it may go now
+        expectDrain(queue, s3);
+    }
+
+    // A client a little behind gets deltas reaching back over the one still queued, never a snapshot every
+    // tick; only a dropped update the new frame does not cover calls for one
+    private static void coalescingNeedsNoSnapshot() throws IOException {
+        OutboundQueue queue = new OutboundQueue(OutboundQueue.Policy.COALESCE, 16);
+        queue.offer(delta(3, 4));
+        check(queue.scoreBase(4) == 3, "next delta does not reach back over the queued one");
+        queue.offer(delta(3, 5));
+        check(!queue.takeScoresDropped(), "covered delta was reported as dropped");
+        queue.offer(delta(5, 6)); // Leaves the gap 3..5 open
+        check(queue.takeScoresDropped(), "uncovered delta was not reported as dropped");
+        queue.offer(delta(2, 7));
+        queue.offer(snapshot(8));
+        check(!queue.takeScoresDropped(), "a snapshot was followed by a request for another");
+        check(queue.scoreBase(8) == -1, "delta built on a queued snapshot that it will replace");
+        check(queue.size() == 1, "queue holds " + queue.size() + " score updates, expected 1");
+    }
+
+    // A writer thread drains while the game loop offers numbered frames and score updates; every frame that
+    // is not a score update must arrive, in order, and the last score update must always arrive
+    private static void concurrentOfferAndDrain(OutboundQueue.Policy policy) throws Exception {
+        int frames = 100_000;
+        OutboundQueue queue = new OutboundQueue(policy, 64);
+        EncodedMessage[] ordered = new EncodedMessage[] {EncodedMessage.ACK, EncodedMessage.NACK, EncodedMessage.CORRECT};
+        EncodedMessage lastScore = score(frames);
+        List<EncodedMessage> received = new ArrayList<>();
+        boolean[] done = {false};
+
+        Thread writer = new Thread(() -> {
+            while (true) {
+                OutboundQueue.Entry entry = queue.peek();
+                if (entry == null) {
+                    synchronized (done) {
+                        if (done[0] && queue.isEmpty()) {
+                            return;
+                        }
+                    }
+                    Thread.yield();
+                    continue;
+                }
+                // A slow socket: the game loop gets to run while the frame is on its way out
+                Thread.yield();
+                received.add(entry.message);
+                queue.remove(entry);
+            }
+        });
+        writer.start();
+        EncodedMessage score = score(0);
+        int sent = 0;
+        for (int i = 1; i <= frames; i++) {
+            if (i % 3 == 0) {
+                score = i == frames ? lastScore : score;
+                check(queue.offer(score), "queue evicted");
+            } else {
+                // Keep the queue short, so the frame being written is often a score update the next offer replaces
+                while (queue.size() >= 4) {
+                    Thread.yield();
+                }
+                check(queue.offer(ordered[sent++ % ordered.length]), "queue evicted");
+            }
+        }
+        check(queue.offer(lastScore), "queue evicted");
+        synchronized (done) {
+            done[0] = true;
+        }
+        writer.join();
+
+        int next = 0;
+        for (EncodedMessage message : received) {
+            if (message.getType() != TCPMessage.MessageType.SCORE_UPDATE) {
+                check(message == ordered[next++ % ordered.length], policy + ": frame " + next + " lost or out of order");
+            }
+        }
+        check(next == sent, policy + ": " + (sent - next) + " of " + sent + " frames lost");
+        check(received.get(received.size() - 1) == lastScore, policy + ": last score update lost");
+    }
+
+    private static EncodedMessage score(int version) throws IOException {
+        return EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE,
+                                                new ScoreUpdate(false, version, new int[] {1}, new int[] {version})));
+    }
+
+    private static EncodedMessage delta(long base, int version) throws IOException {
+        return EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE,
+                                                new ScoreUpdate(false, version, new int[] {1}, new int[] {version})), base);
+    }
+
+    private static EncodedMessage snapshot(int version) throws IOException {
+        return EncodedMessage.of(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE,
+                                                new ScoreUpdate(true, version, new int[] {1}, new int[] {version})));
+    }
+
+    private static void expectDrain(OutboundQueue queue, EncodedMessage... expected) {
+        for (EncodedMessage message : expected) {
+            OutboundQueue.Entry entry = queue.peek();
+            check(entry != null && entry.message == message,
+                  "expected " + message + " but the queue holds " + (entry != null ? entry.message : "nothing"));
+            queue.remove(entry);
+        }
+        check(queue.isEmpty(), "queue still holds " + queue.size() + " frames");
+    }
+
+    private static void check(boolean condition, String failure) {
+        if (!condition) {
+            System.out.println("OutboundQueueTest FAILED: " + failure);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package server;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Players ordered by score, highest first (ties go to the lower player ID)
+// An order-statistic skip list: every forward link records how many players it skips, so the rank of a
+// player, the player at a rank and a run of neighbours are all found in O(log n) instead of sorting the
+// whole table. Players are addressed by their ScoreTable slot and a score change relinks the player's
+// existing node, so updates allocate nothing. Not thread-safe; the owning Scoreboard guards it.
+public class RankedIndex {
+    private static final int MAX_LEVEL = 32;
+
+    private static final class Node {
+        final int playerId;
+        int score;
+        final Node[] next;
+        final int[] span; // Players passed when following next[i], this node's successor included
+
+        Node(int playerId, int score, int levels) {
+            this.playerId = playerId;
+            this.score = score;
+            this.next = new Node[levels];
+            this.span = new int[levels];
+        }
+    }
+
+    private final Node head = new Node(-1, 0, MAX_LEVEL);
+    private Node[] nodes = new Node[16];  // Indexed by slot
+    private int size = 0;
+    private int level = 1;
+
+    // Search paths reused by link and unlink
+    private final Node[] update = new Node[MAX_LEVEL];
+    private final int[] rank = new int[MAX_LEVEL];
+
+    // Sets the score of the player in a slot, inserting the player if needed
+    public void put(int slot, int playerId, int score) {
+        if (slot >= nodes.length) {
+            nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, slot + 1));
+        }
+        Node node = nodes[slot];
+        if (node == null) {
+            node = new Node(playerId, score, randomLevel());
+            nodes[slot] = node;
+        } else {
+            if (node.score == score) {
+                return;
+            }
+            unlink(node);
+            node.score = score;
+        }
+        link(node);
+    }
+
+    public void remove(int slot) {
+        if (slot < nodes.length && nodes[slot] != null) {
+            unlink(nodes[slot]);
+            nodes[slot] = null;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 1-based rank of the player in a slot, or 0 if the slot is not ranked
+    public int rankOf(int slot) {
+        Node target = slot < nodes.length ? nodes[slot] : null;
+        if (target == null) {
+            return 0;
+        }
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && !precedes(target.playerId, target.score, x.next[i])) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x == target) {
+                return rank;
+            }
+        }
+        return rank;
+    }
+
+    // Copies up to count players starting at the given 1-based rank into the arrays at offset; returns how
+    // many were copied
+    public int range(int fromRank, int count, int[] ids, int[] scores, int offset) {
+        if (fromRank < 1 || fromRank > size) {
+            return 0;
+        }
+        // Walk down the levels to the node just before fromRank, then follow the bottom links
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] < fromRank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+        }
+        int copied = 0;
+        for (Node n = x.next[0]; n != null && copied < count; n = n.next[0]) {
+            ids[offset + copied] = n.playerId;
+            scores[offset + copied] = n.score;
+            copied++;
+        }
+        return copied;
+    }
+
+    // True if (playerId, score) sorts strictly before the given node
+    private static boolean precedes(int playerId, int score, Node node) {
+        return score > node.score || (score == node.score && playerId < node.playerId);
+    }
+
+    // Links a node in at its score's position; the node keeps the height it was created with
+    private void link(Node node) {
+        Node[] update = this.update;
+        int[] rank = this.rank;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && !precedes(node.playerId, node.score, x.next[i])) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int levels = node.next.length;
+        if (levels > level) {
+            for (int i = level; i < levels; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                update[i].span[i] = size;
+            }
+            level = levels;
+        }
+        for (int i = 0; i < levels; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        // Links above the new node's height now skip one more player
+        for (int i = levels; i < level; i++) {
+            update[i].span[i]++;
+        }
+        size++;
+    }
+
+    private void unlink(Node target) {
+        Node[] update = this.update;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && x.next[i] != target && precedes(x.next[i].playerId, x.next[i].score, target)) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == target) {
+                update[i].span[i] += target.span[i] - 1;
+                update[i].next[i] = target.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+    }
+
+    // Geometric level with p = 1/4, as in most skip lists
+    private static int randomLevel() {
+        int levels = 1;
+        while (levels < MAX_LEVEL && (ThreadLocalRandom.current().nextInt() & 3) == 0) {
+            levels++;
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,111 @@
+package server;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+// Scores for one room in two parallel int arrays indexed by slot
+// A player's slot is handed out when they join and never reused, so IDs and scores together cost 8 bytes per
+// player with nothing boxed and nothing allocated per update. Writers hold the table lock and bump a sequence
+// number around every change (odd while a change is in progress); snapshot() copies the arrays without the
+// lock and retries if the sequence moved, so publishing never blocks scoring.
+public class ScoreTable {
+    private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+    // Consistent copy of the table at one version
+    public static final class Snapshot {
+        final long version;
+        final int[] playerIds;
+        final int[] scores;
+
+        Snapshot(long version, int[] playerIds, int[] scores) {
+            this.version = version;
+            this.playerIds = playerIds;
+            this.scores = scores;
+        }
+    }
+
+    private int[] playerIds;
+    private int[] scores;
+    private int size = 0;
+    private long version = 0;
+    private volatile int sequence = 0;
+
+    public ScoreTable(int initialCapacity) {
+        playerIds = new int[Math.max(16, initialCapacity)];
+        scores = new int[playerIds.length];
+    }
+
+    // Adds a player with a score of zero and returns their slot
+    public synchronized int addPlayer(int playerId) {
+        beginWrite();
+        if (size == playerIds.length) {
+            playerIds = Arrays.copyOf(playerIds, size * 2);
+            scores = Arrays.copyOf(scores, size * 2);
+        }
+        playerIds[size] = playerId;
+        scores[size] = 0;
+        version++;
+        int slot = size++;
+        endWrite();
+        return slot;
+    }
+
+    // Applies a delta to the score in a slot and returns the new score
+    public synchronized int addScore(int slot, int delta) {
+        beginWrite();
+        int score = scores[slot] + delta;
+        scores[slot] = score;
+        version++;
+        endWrite();
+        return score;
+    }
+
+    public int getScore(int slot) {
+        int ignored = sequence; // Volatile read so a grown array is visible
+        return scores[slot];
+    }
+
+    public synchronized int getPlayerId(int slot) {
+        return playerIds[slot];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // Copies the table; falls back to the lock only if writers keep moving the sequence
+    public Snapshot snapshot() {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            int before = sequence;
+            if ((before & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            int count = size;
+            long atVersion = version;
+            // copyOf pads instead of failing if a concurrent grow is seen half done; the check below discards it
+            int[] ids = Arrays.copyOf(playerIds, count);
+            int[] values = Arrays.copyOf(scores, count);
+            VarHandle.loadLoadFence();
+            if (sequence == before) {
+                return new Snapshot(atVersion, ids, values);
+            }
+        }
+        synchronized (this) {
+            return new Snapshot(version, Arrays.copyOf(playerIds, size), Arrays.copyOf(scores, size));
+        }
+    }
+
+    private void beginWrite() {
+        sequence++;
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        sequence++;
+    }
+}
@@ -0,0 +1,118 @@
+package server;
+
+import java.util.Arrays;
+
+import model.ScoreUpdate;
+
+// Versioned scores for one room
+// Every change bumps the version and is recorded in a bounded change log, so a client that last saw
+// version v can be sent only the players that changed after v. Clients older than the log, new joiners
+// and clients whose updates were dropped get a full snapshot instead. Scores live in a primitive
+// ScoreTable indexed by slot; a RankedIndex kept alongside serves rank queries and the ranked windows
+// sent in large rooms.
+public class Scoreboard {
+    private final ScoreTable table = new ScoreTable(16);
+    private final RankedIndex ranking = new RankedIndex();
+    private final int[] changedSlots;  // Ring buffer: slot changed at version v sits at v % length
+
+    public Scoreboard(int historySize) {
+        changedSlots = new int[Math.max(16, historySize)];
+    }
+
+    // Adds a player with a score of zero and returns the slot used for them from then on
+    public synchronized int addPlayer(int playerId) {
+        int slot = table.addPlayer(playerId);
+        ranking.put(slot, playerId, 0);
+        recordChange(slot);
+        return slot;
+    }
+
+    // Applies a positive or negative delta to a player's score; allocates nothing
+    public synchronized void addScore(int slot, int delta) {
+        int score = table.addScore(slot, delta);
+        ranking.put(slot, table.getPlayerId(slot), score);
+        recordChange(slot);
+    }
+
+    private void recordChange(int slot) {
+        changedSlots[(int) (table.getVersion() % changedSlots.length)] = slot;
+    }
+
+    public int getScore(int slot) {
+        return table.getScore(slot);
+    }
+
+    public long getVersion() {
+        return table.getVersion();
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    // 1-based rank of a player, or 0 if unknown
+    public synchronized int rankOf(int slot) {
+        return ranking.rankOf(slot);
+    }
+
+    // Full table at one version; copied without taking the scoreboard lock
+    public ScoreUpdate snapshot() {
+        ScoreTable.Snapshot snapshot = table.snapshot();
+        return new ScoreUpdate(true, snapshot.version, snapshot.playerIds, snapshot.scores);
+    }
+
+    // Players that changed after the given version with their current scores, or a snapshot when that
+    // version has already fallen out of the change log (or is negative, meaning "unknown")
+    public synchronized ScoreUpdate changesSince(long baseVersion) {
+        long version = table.getVersion();
+        if (baseVersion < 0 || baseVersion < version - changedSlots.length) {
+            return snapshot();
+        }
+        // Sort the changed slots so a player that changed several times is sent once
+        int[] slots = new int[(int) (version - baseVersion)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = changedSlots[(int) ((baseVersion + 1 + i) % changedSlots.length)];
+        }
+        Arrays.sort(slots);
+        int unique = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (i == 0 || slots[i] != slots[i - 1]) {
+                slots[unique++] = slots[i];
+            }
+        }
+        int[] ids = new int[unique];
+        int[] values = new int[unique];
+        for (int i = 0; i < unique; i++) {
+            ids[i] = table.getPlayerId(slots[i]);
+            values[i] = table.getScore(slots[i]);
+        }
+        return new ScoreUpdate(false, version, ids, values);
+    }
+
+    // The top players plus the given player's neighbours on either side, in rank order
+    // Costs O(log n + topK + neighbours) however many players the room has
+    public synchronized ScoreUpdate rankedWindow(int slot, int topK, int neighbours) {
+        int capacity = topK + 2 * neighbours + 1;
+        int[] ids = new int[capacity];
+        int[] values = new int[capacity];
+        int[] ranks = new int[capacity];
+        int count = ranking.range(1, topK, ids, values, 0);
+        for (int i = 0; i < count; i++) {
+            ranks[i] = i + 1;
+        }
+        int rank = ranking.rankOf(slot);
+        if (rank > 0) {
+            int from = Math.max(count + 1, rank - neighbours);
+            int to = rank + neighbours;
+            if (to >= from) {
+                int copied = ranking.range(from, to - from + 1, ids, values, count);
+                for (int i = 0; i < copied; i++) {
+                    ranks[count + i] = from + i;
+                }
+                count += copied;
+            }
+        }
+        return new ScoreUpdate(true, table.getVersion(), Arrays.copyOf(ids, count), Arrays.copyOf(values, count),
+                               Arrays.copyOf(ranks, count), table.size());
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// Server-only tunables that do not belong in the shared config/config.txt
+// Every key is optional; a missing file or key falls back to the default passed by the caller
+public class ServerConfig {
+    private final Properties properties = new Properties();
+
+    // Loads config/server.properties if it exists
+    public static ServerConfig load() {
+        ServerConfig config = new ServerConfig();
+        Path file = Paths.get("config", "server.properties");
+        if (Files.exists(file)) {
+            try (Reader reader = new FileReader(file.toFile())) {
+                config.properties.load(reader);
+                System.out.println("Loaded server settings from " + file);
+            } catch (IOException e) {
+                System.err.println("Error reading server settings, using defaults: " + e.getMessage());
+            }
+        }
+        return config;
+    }
+
+    // Independent copy, so a tool can override settings for one run without touching the original
+    public ServerConfig copy() {
+        ServerConfig copy = new ServerConfig();
+        copy.properties.putAll(properties);
+        return copy;
+    }
+
+    // Overrides a single setting, used by tools that build a server without a properties file
+    public ServerConfig set(String key, String value) {
+        properties.setProperty(key, value);
+        return this;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -3,41 +3,97 @@ package server;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import model.PlayerAnswer;
-import model.Question;
+import model.HashedWheelTimer;
 import model.QuestionBank;
-import model.TCPMessage;
 
 public class ServerTrivia {
     private ExecutorService executorService;
-    private UDPThread udpThread;
+    // Every room's deadlines (buzz window, answer window, pause between questions, idle rooms) are armed on
+    // one timing wheel and run on the scheduler pool once due
+    private final HashedWheelTimer timer;
+    private final ThreadPoolExecutor scheduler;
+    // Time source for every room; the wheel above unless a simulation injects its own clock
+    private final GameClock clock;
+    private final ServerConfig config;
+    // Durable record of every game; unfinished games it recovered are resumed before new rooms are opened
+    private final EventLog eventLog;
+    private final ArrayDeque<EventLog.RecoveredRoom> recoveredRooms;
+    private final ThreadMode threadMode;
+    // Buzz receivers: udp.receivers sockets share the UDP port so ingest is not capped at one core
+    private UdpIngest udpIngest;
+    private final int udpReceivers;
+    private final int udpReceiveBufferBytes;
     private int nextClientID = 1;
     private String serverIP;
     private int serverPort1; // TCP Port
     private int serverPort2; // UDP Port
-    private Map<Integer, ClientThread> activeClients = new ConcurrentHashMap<>();
-    private Question currentQuestion;
-    
-    // Added by Brooks - Thread-safe score tracking for all clients
-    private final Map<Integer, Integer> clientScores = new ConcurrentHashMap<>();
+    private Map<Integer, ClientConnection> activeClients = new ConcurrentHashMap<>();
+    private final SessionTable sessionTable = new SessionTable();
+
     // Added by Brooks - Question bank to serve questions to clients
     private QuestionBank questionBank = new QuestionBank();
-    // Added by Brooks - Flag to control game state
-    private volatile boolean gameActive = true;
+
+    // Independent games hosted by this server, keyed by room ID
+    private final Map<Integer, GameRoom> rooms = new ConcurrentHashMap<>();
+    private GameRoom openRoom;
+    private int nextRoomID = 1;
+    private final int roomCapacity;
+    private final long joinWaitMillis;
+
+    // Transport selection: one blocking ClientThread per client, or a few shared NIO event loops
+    private final boolean useNio;
+    private final int nioThreads;
+    private NioTransport nioTransport;
+    private final OutboundQueue.Policy outboundPolicy;
+    private final int outboundHighWaterMark;
     
     // Added by Eric - Server Trivia Constructor
     public ServerTrivia() {
-        executorService = Executors.newCachedThreadPool();
+        this(ServerConfig.load());
+    }
+
+    public ServerTrivia(ServerConfig config) {
+        this(config, null);
+    }
+
+    // Runs every room on the given clock, or on real time with the shared timing wheel when clock is null
+    public ServerTrivia(ServerConfig config, GameClock clock) {
+        this.config = config;
+        int schedulerThreads = config.getInt("scheduler.threads", Runtime.getRuntime().availableProcessors());
+        scheduler = new ThreadPoolExecutor(schedulerThreads, schedulerThreads, 60, TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<>());
+        scheduler.allowCoreThreadTimeOut(true);
+        timer = new HashedWheelTimer("room-timer", config.getLong("timer.tickMillis", 10),
+                                     config.getInt("timer.wheelSize", 512));
+        this.clock = clock != null ? clock : GameClock.system(timer, scheduler);
+        threadMode = ThreadMode.parse(config.getString("threads", "cached"));
+        executorService = threadMode.newExecutor();
+        roomCapacity = Math.max(1, config.getInt("room.capacity", 8));
+        joinWaitMillis = config.getLong("room.joinWaitSeconds", 10) * 1000;
+        useNio = "nio".equalsIgnoreCase(config.getString("transport", "blocking"));
+        nioThreads = config.getInt("transport.nioThreads", Runtime.getRuntime().availableProcessors());
+        udpReceivers = config.getInt("udp.receivers", Runtime.getRuntime().availableProcessors());
+        udpReceiveBufferBytes = config.getInt("udp.receiveBufferBytes", 1 << 20);
+        outboundPolicy = OutboundQueue.Policy.parse(config.getString("outbound.policy", "drop_stale_scores"));
+        outboundHighWaterMark = config.getInt("outbound.highWaterMark", 256);
+        eventLog = EventLog.open(config);
+        recoveredRooms = new ArrayDeque<>(eventLog.getRecoveredRooms());
+        nextClientID = eventLog.getMaxClientId() + 1;
+        nextRoomID = eventLog.getMaxRoomId() + 1;
     }
 
     // Added by Eric - Read Server Config for IP and Port
@@ -55,65 +111,65 @@ public class ServerTrivia {
         }
     }
 
-    // Added by Brooks - Initializes score tracking for new clients
-    public void initializeClientScore(int clientID) {
-        clientScores.put(clientID, 0);
-        System.out.println("Score initialized for client " + clientID);
-    }
-    
-    // Added by Brooks - Updates client score with positive/negative delta
-    public void updateClientScore(int clientID, int delta) {
-        clientScores.merge(clientID, delta, Integer::sum);
-        broadcastScores();
-    }
-    
-    // Added by Brooks - Retrieves current score for specified client
-    public int getClientScore(int clientID) {
-        return clientScores.getOrDefault(clientID, 0);
-    }
-
-    // Added by Brooks - Validates player answer against correct answer
-    public boolean validateAnswer(PlayerAnswer answer) {
-        Question question = questionBank.getQuestion(answer.getQuestionId());
-
-        return question != null && 
-               question.getCorrectAnswer() == answer.getSelectedOption();
+    // Places a new client into the open room, creating and starting a new room when the last one filled up
+    private synchronized GameRoom assignRoom() {
+        if (openRoom == null || !openRoom.isOpen()) {
+            EventLog.RecoveredRoom recovered = recoveredRooms.poll();
+            int roomID = recovered != null ? recovered.getRoomId() : nextRoomID++;
+            openRoom = new GameRoom(roomID, this, questionBank, roomCapacity, recovered);
+            rooms.put(roomID, openRoom);
+            openRoom.startGame(joinWaitMillis);
+            System.out.println("Room " + roomID + (recovered != null
+                    ? " resumed after question " + recovered.getQuestionNumber() : " opened"));
+        }
+        return openRoom;
     }
 
     // Added by Eric - Start Trivia Server
     // Modified by Brooks - Added full server startup sequence with proper resource cleanup
     public void startServer() {
         ServerSocket serverSocket = null;
-        DatagramSocket udpSocket = null;
         
         try {
-            // Start TCP server socket
-            serverSocket = new ServerSocket(serverPort1, 50, InetAddress.getByName(serverIP));
-            System.out.println("TCP server started on " + serverIP + ":" + serverPort1);
-
-            // Start UDP server socket
-            udpSocket = new DatagramSocket(serverPort2, InetAddress.getByName(serverIP));
-            System.out.println("UDP server started on port " + serverPort2);
-
-            // Start UDP message handler
-            udpThread = new UDPThread(udpSocket, this);
-            executorService.submit(udpThread);
+            // Start TCP server socket; the NIO transport accepts through a channel so it can hand sockets to its loops
+            if (useNio) {
+                ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(InetAddress.getByName(serverIP), serverPort1), 50);
+                serverSocket = serverChannel.socket();
+                nioTransport = new NioTransport(nioThreads, executorService);
+            } else {
+                serverSocket = new ServerSocket(serverPort1, 50, InetAddress.getByName(serverIP));
+            }
+            System.out.println("TCP server started on " + serverIP + ":" + serverPort1 +
+                             (useNio ? " (nio" : " (blocking") + ", " + threadMode.name().toLowerCase() + " threads)");
 
-            // Start game question loop
-                                                               // MAKE GAME WAIT FOR 10 SEC FOR PEOPLE TO JOIN.
-            startGame();
+            // Start the UDP sockets and their message handlers
+            udpIngest = new UdpIngest(InetAddress.getByName(serverIP), serverPort2, udpReceivers, udpReceiveBufferBytes,
+                                      this, executorService);
+            Metrics.start(this);
 
             // Accept client connections
             while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("New client connected: " + clientSocket.getInetAddress());
-
                 int clientID = nextClientID++;
-                ClientThread clientThread = new ClientThread(clientSocket, clientID, this);
-                
-                initializeClientScore(clientID);
-                activeClients.put(clientID, clientThread);
-                executorService.submit(clientThread);
+                if (useNio) {
+                    SocketChannel clientChannel = serverSocket.getChannel().accept();
+                    System.out.println("New client connected: " + clientChannel.socket().getInetAddress());
+
+                    GameRoom room = assignRoom();
+                    NioConnection connection = nioTransport.accept(clientChannel, clientID, this, room);
+                    room.addClient(connection);
+                    addClient(clientID, connection);
+                } else {
+                    Socket clientSocket = serverSocket.accept();
+                    System.out.println("New client connected: " + clientSocket.getInetAddress());
+
+                    GameRoom room = assignRoom();
+                    ClientThread clientThread = new ClientThread(clientSocket, clientID, this, room);
+
+                    room.addClient(clientThread);
+                    addClient(clientID, clientThread);
+                    executorService.submit(clientThread);
+                }
             }
 
         } catch (Exception e) {
@@ -127,188 +183,96 @@ public class ServerTrivia {
             } catch (IOException e) {
                 System.err.println("Error closing TCP server socket: " + e.getMessage());
             }
-            try {
-                if (udpSocket != null && !udpSocket.isClosed()) {
-                    udpSocket.close();
-                }
-            } catch (Exception e) {
-                System.err.println("Error closing UDP socket: " + e.getMessage());
+            if (udpIngest != null) {
+                udpIngest.close();
             }
             shutdown();
         }
     }
 
-    // Added by Brooks - Manages the game question flow in separate thread
-    // Modified by Eric - Added ACK/NACK logic, answer handling, thread timing logic with sleeps and loops, resets Buzz queue and answer of client
-    // Modified by Pierce - updates client eligibilities before sending a question to the client.
-    // Modified by Brooks - Added logic for extra credit
-    private void startGame() {
-        new Thread(() -> {
-            try {
-                Thread.sleep(10000); // Initial wait for players to join
-                while (gameActive && questionBank.hasMoreQuestions()) {
-                    currentQuestion = questionBank.getNextQuestion();
-                    eligibility();
-                    broadcastQuestion(currentQuestion);
-                    udpThread.clearBuzzQueue(); // Reset the buzz queue
-
-                    // Wait 15 seconds for buzzes
-                    Thread.sleep(15000);
-
-                    // NEW: Flag to track if question was answered correctly
-                    boolean correctAnswerReceived = false;
-                    
-                    // NEW: Process buzzes in order until correct answer or queue empty
-                    while (!correctAnswerReceived && !udpThread.isBuzzQueueEmpty()) {
-                        Integer answeringClientId = udpThread.getFirstBuzzedClient();
-                        if (answeringClientId != null) {
-                            ClientThread answeringClient = activeClients.get(answeringClientId);
-                            if (answeringClient != null) {
-                                // Send ACK to answering client
-                                try {
-                                    answeringClient.sendAck();
-                                } catch (IOException e) {
-                                    System.err.println("Error sending ACK to client " + answeringClientId);
-                                    continue;
-                                }
-                                answeringClient.clearAnswer();
-
-                                // Send NACK to all other active clients
-                                activeClients.values().forEach(c -> {
-                                    if (c.getClientId() != answeringClientId) {
-                                        try {
-                                            c.sendNack();
-                                        } catch (IOException e) {
-                                            System.err.println("Error sending NACK to client " + c.getClientId());
-                                        }
-                                    }
-                                });
-
-                                // Wait up to 10 seconds for the answer
-                                long startTime = System.currentTimeMillis();
-                                PlayerAnswer answer = null;
-                                while (System.currentTimeMillis() - startTime < 10000) {
-                                    answer = answeringClient.getAnswer();
-                                    if (answer != null) {
-                                        if (validateAnswer(answer)) {
-                                            updateClientScore(answeringClientId, 10);
-                                            try {
-                                                answeringClient.sendRight();
-                                            } catch (IOException e) {
-                                                System.err.println("Error sending RIGHT to client " + answeringClientId);
-                                            }
-                                            correctAnswerReceived = true;
-                                        } else {
-                                            updateClientScore(answeringClientId, -10);
-                                            try {
-                                                answeringClient.sendWrong();
-                                            } catch (IOException e) {
-                                                System.err.println("Error sending WRONG to client " + answeringClientId);
-                                            }
-                                            // NEW: Break to give next client a chance
-                                            break;
-                                        }
-                                        break; // Exit loop once answer is received
-                                    }
-                                    Thread.sleep(100); // Check every 100ms
-                                }
-
-                                if (answer == null) { // No answer received after 10 seconds
-                                    updateClientScore(answeringClientId, -20);
-                                    try {
-                                        answeringClient.sendTimeout();
-                                    } catch (IOException e) {
-                                        System.err.println("Error sending TIMEOUT to client " + answeringClientId);
-                                    }
-                                    // NEW: Timeout - break to give next client a chance
-                                }
-                                answeringClient.clearAnswer();
-                            }
-                        }
-                    }
-                    Thread.sleep(5000); // Brief pause between questions
-                }
-                endGame();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
+    // Added by Eric - Shutdown server thread pool
+    private void shutdown() {
+        if (nioTransport != null) {
+            nioTransport.shutdown();
+        }
+        executorService.shutdown();
+        timer.stop();
+        scheduler.shutdown();
+        eventLog.close();
+        Metrics.stop();
+        System.out.println("Server shutting down...");
     }
 
-    // Added by Brooks - Broadcasts question to all connected clients
-    private void broadcastQuestion(Question question) {
-        activeClients.values().forEach(client -> {
-            try {
-                client.sendQuestion(question);
-            } catch (IOException e) {
-                System.err.println("Error sending question to client " + client.getClientId());
-            }
-        });
+    // Added by Eric - Method to get all connected clients
+    public Map<Integer, ClientConnection> getActiveClients() {
+        return activeClients;
     }
 
-    private void broadcastScores() {
-    activeClients.values().forEach(client -> {
-        try {
-            client.sendMessage(new TCPMessage(TCPMessage.MessageType.SCORE_UPDATE, 
-                new HashMap<>(clientScores)));
-        } catch (IOException e) {
-            System.err.println("Error sending scores to client " + client.getClientId());
+    // Added by Eric - Method to add a new client to the map
+    public void addClient(int clientID, ClientConnection client) {
+        activeClients.put(clientID, client);
+        sessionTable.register(client);
+    }
+
+    // Added by Eric - Method to remove a client from the map
+    public void removeClient(ClientConnection client) {
+        activeClients.remove(client.getClientId());
+        sessionTable.release(client);
+        System.out.println("Client " + client.getClientId() + " removed");
+    }
+
+    // Token-to-connection index used to identify buzzes
+    public SessionTable getSessionTable() {
+        return sessionTable;
+    }
+
+    // Called by a room once its game has finished so it stops taking players
+    public synchronized void removeRoom(int roomID) {
+        GameRoom room = rooms.remove(roomID);
+        if (room == openRoom) {
+            openRoom = null;
         }
-    });
-}
+        System.out.println("Room " + roomID + " closed");
+    }
 
-    //Added by Pierce - sends ELIGIBILITY message to client allowing them to press the poll button.
-    private void eligibility() {
-        activeClients.values().forEach(client -> {
-            try {
-                client.sendEligibility();
-            } catch (IOException e) {
-                System.err.println("Error sending eligibility to client " + client.getClientId());
-            }
-        });
+    public Map<Integer, GameRoom> getRooms() {
+        return rooms;
     }
 
-    // Added by Brooks - Ends game and announces final scores
-    private void endGame() {
-        gameActive = false;
-        activeClients.values().forEach(client -> {
-            try {
-                client.sendGameOver();
-            } catch (IOException e) {
-                System.err.println("Error sending game over to client " + client.getClientId());
-            }
-        });
-        
-        System.out.println("Game over! Final scores:");
-        clientScores.forEach((id, score) -> 
-            System.out.println("Client " + id + ": " + score + " points"));
+    public EventLog getEventLog() {
+        return eventLog;
     }
 
-    // Added by Eric - Shutdown server thread pool
-    private void shutdown() {
-        executorService.shutdown();
-        System.out.println("Server shutting down...");
+    // Pool that runs room deadlines once the wheel finds them due
+    public ExecutorService getScheduler() {
+        return scheduler;
     }
 
-    // Added by Eric - Method to get all connected clients
-    public Map<Integer, ClientThread> getActiveClients() {
-        return activeClients;
+    public HashedWheelTimer getTimer() {
+        return timer;
     }
 
-    // Added by Eric - Method to add a new client to the map
-    public void addClient(int clientID, ClientThread clientThread) {
-        activeClients.put(clientID, clientThread);
+    public GameClock getClock() {
+        return clock;
     }
 
-    // Added by Eric - Method to remove a client from the map
-    public void removeClient(int clientID) {
-        activeClients.remove(clientID);
-        System.out.println("Client " + clientID + " removed");
+    // Each connection gets its own bounded queue using the server-wide slow-consumer settings
+    public OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(outboundPolicy, outboundHighWaterMark);
+    }
+
+    public ServerConfig getConfig() {
+        return config;
+    }
+
+    // Null until startServer has bound the UDP port
+    public UdpIngest getUdpIngest() {
+        return udpIngest;
     }
 
-    // Added by Eric - Method to get the current question the game server/loop sent to the clients
-    public Question getCurrentQuestion() {
-        return currentQuestion;
+    // Shared pool used by client handlers, the UDP listener and the NIO event loops
+    public ExecutorService getExecutorService() {
+        return executorService;
     }
 
     // Added by Eric - main method to start trivia server
@@ -0,0 +1,75 @@
+package server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Maps the session token carried in every buzz straight to its connection
+// A token packs a table slot in its low bits and a random nonce in its high bits, so lookup is one array
+// read plus a compare no matter how many players are connected, and a reused slot never matches a
+// token handed out to an earlier player
+public class SessionTable {
+    private static final int SLOT_BITS = 20;
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+    private static final int MAX_SLOTS = 1 << SLOT_BITS;
+
+    private volatile AtomicReferenceArray<ClientConnection> slots = new AtomicReferenceArray<>(1024);
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+    private int nextSlot = 0;
+
+    // Picks a free slot and returns a fresh token for it
+    public synchronized int allocateToken() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (nextSlot == MAX_SLOTS) {
+                throw new IllegalStateException("Session table full");
+            }
+            slot = nextSlot++;
+            if (slot == slots.length()) {
+                grow();
+            }
+        }
+        int nonce = ThreadLocalRandom.current().nextInt(1, 1 << (32 - SLOT_BITS));
+        return (nonce << SLOT_BITS) | slot;
+    }
+
+    // Publishes a connection under the token it was created with
+    public synchronized void register(ClientConnection connection) {
+        slots.set(connection.getSessionToken() & SLOT_MASK, connection);
+    }
+
+    // Returns the connection holding this token, or null for unknown, stale or forged tokens
+    public ClientConnection lookup(int token) {
+        AtomicReferenceArray<ClientConnection> current = slots;
+        int slot = token & SLOT_MASK;
+        if (slot >= current.length()) {
+            return null;
+        }
+        ClientConnection connection = current.get(slot);
+        return connection != null && connection.getSessionToken() == token ? connection : null;
+    }
+
+    // Frees the slot of a disconnected client for reuse
+    public synchronized void release(ClientConnection connection) {
+        int slot = connection.getSessionToken() & SLOT_MASK;
+        if (slots.compareAndSet(slot, connection, null)) {
+            if (freeCount == freeSlots.length) {
+                int[] larger = new int[freeSlots.length * 2];
+                System.arraycopy(freeSlots, 0, larger, 0, freeCount);
+                freeSlots = larger;
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    private void grow() {
+        AtomicReferenceArray<ClientConnection> old = slots;
+        AtomicReferenceArray<ClientConnection> larger = new AtomicReferenceArray<>(Math.min(old.length() * 2, MAX_SLOTS));
+        for (int i = 0; i < old.length(); i++) {
+            larger.set(i, old.get(i));
+        }
+        slots = larger;
+    }
+}
@@ -0,0 +1,93 @@
+package server;
+
+import java.util.PriorityQueue;
+
+// Virtual clock for deterministic simulation
+// Time only moves when the driver runs the next task, and then jumps straight to that task's due time, so a
+// 15 second buzz window costs nothing. Tasks due at the same instant run in the order they were scheduled,
+// which makes a run a pure function of its inputs. Not thread-safe: one thread drives it and every task
+// runs on that thread.
+public class SimulatedClock implements GameClock {
+
+    private static final class Task implements Timeout, Comparable<Task> {
+        final long dueAt;
+        final long sequence;
+        final Runnable action;
+        boolean cancelled = false;
+
+        Task(long dueAt, long sequence, Runnable action) {
+            this.dueAt = dueAt;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byTime = Long.compare(dueAt, other.dueAt);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+    private long now = 0;
+    private long nextSequence = 0;
+    private long executed = 0;
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Task scheduled = new Task(now + Math.max(0, delayMillis), nextSequence++, task);
+        tasks.add(scheduled);
+        return scheduled;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        schedule(task, 0);
+    }
+
+    // Advances to the earliest pending task and runs it; false when nothing is left to run
+    // Cancelled tasks stay queued until they come up and are then skipped
+    public boolean runNext() {
+        Task task;
+        while ((task = tasks.poll()) != null) {
+            if (!task.cancelled) {
+                now = task.dueAt;
+                executed++;
+                task.action.run();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Runs tasks until none are left or the next one is due after the given time
+    public void runUntil(long time) {
+        Task head;
+        while ((head = tasks.peek()) != null && head.dueAt <= time) {
+            if (head.cancelled) {
+                tasks.poll();
+            } else {
+                runNext();
+            }
+        }
+        now = Math.max(now, time);
+    }
+
+    public long getExecuted() {
+        return executed;
+    }
+
+    public int getPending() {
+        return tasks.size();
+    }
+}
@@ -0,0 +1,48 @@
+package server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// How the server runs its blocking work: client handlers and the UDP listener
+// CACHED uses the original cached pool of platform threads; VIRTUAL starts one virtual thread per task so
+// the blocking style of ClientThread.run() stays cheap even with very many idle connections
+public enum ThreadMode {
+    CACHED,
+    VIRTUAL;
+
+    public static ThreadMode parse(String value) {
+        return "virtual".equalsIgnoreCase(value) ? VIRTUAL : CACHED;
+    }
+
+    // Creates the executor for this mode, falling back to the cached pool on JVMs without virtual threads
+    public ExecutorService newExecutor() {
+        if (this == VIRTUAL) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("Virtual threads need Java 21 or newer, using the cached thread pool instead");
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    // Looked up reflectively so the server still builds and runs on Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
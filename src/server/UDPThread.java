@@ -1,106 +1,125 @@
 package server;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
 import model.UDPMessage;
 
 // Added by Eric - THIS CLASS HANDLES THE COMMUNICATION BETWEEN THE SERVER AND ALL THE CLIENTS
-// UDP 
+// UDP
+// Buzzes are read into one reused direct buffer and checked in place, so the receive loop does not
+// build packets, copy arrays or decode objects per press
+// UdpIngest runs one of these per socket bound to the buzz port; the counters are written only by this thread
+// A sender over its rate limit is dropped before its datagram is even checked
 public class UDPThread implements Runnable{
 
-    private DatagramSocket socket;
+    private DatagramChannel channel;
     private ServerTrivia server;
-    private Queue<Integer> buzzQueue;
-    
-    public UDPThread(DatagramSocket socket, ServerTrivia server) {
-        this.socket = socket;
+    private final int receiver;
+    private final BuzzRateLimiter rateLimiter; // Null when rate limiting is off
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(UDPMessage.SIZE * 4);
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+
+    public UDPThread(DatagramChannel channel, ServerTrivia server, int receiver, BuzzRateLimiter rateLimiter) {
+        this.channel = channel;
         this.server = server;
-        this.buzzQueue = new ConcurrentLinkedQueue<>();
+        this.receiver = receiver;
+        this.rateLimiter = rateLimiter;
     }
 
     // Added by Eric - Method to listen for incoming UDP packets from all clients
     @Override
     public void run() {
         try {
-            byte[] incomingData = new byte[512];
             while (true) {
-                DatagramPacket incomingPacket = new DatagramPacket(incomingData, incomingData.length);
-                socket.receive(incomingPacket);
-
-                // Process the incoming packet
-                String clientIP = incomingPacket.getAddress().getHostAddress();
-                
-                // Decode the message from the packet
-                UDPMessage receivedMessage = UDPMessage.decode(
-                    java.util.Arrays.copyOfRange(incomingPacket.getData(), 0, incomingPacket.getLength())
-                );
-                
-                if (receivedMessage == null) {
-                    System.err.println("Failed to decode message from IP: " + clientIP);
-                    continue;
-                }
-
-                // Find the client thread based on IP
-                ClientThread clientThread = getClientThreadByIP(clientIP);
-                if (clientThread != null) {
-                    // Process the message and handle buzz logic
-                    processBuzz(clientThread, receivedMessage);
-                } else {
-                    System.err.println("Unknown client IP: " + clientIP);
-                }
+                receiveBuffer.clear();
+                InetSocketAddress sender = (InetSocketAddress) channel.receive(receiveBuffer);
+                long received = System.nanoTime();
+                receiveBuffer.flip();
+                packets.lazySet(packets.get() + 1);
+
+                onDatagram(receiveBuffer, sender, received);
             }
         } catch (Exception e) {
-            System.err.println("Error in UDP listening thread: " + e.getMessage());
+            if (channel.isOpen()) {
+                System.err.println("Error in UDP listening thread " + receiver + ": " + e.getMessage());
+            }
         }
     }
 
-    // Added by Eric - Resets the buzz queue after the game loop for one question finishes in the server
-    // Modified by Brooks - Improved queue clearing
-    public void clearBuzzQueue() {
-        if (!buzzQueue.isEmpty()) {
-            System.out.println("Clearing buzz queue: " + buzzQueue);
-            buzzQueue.clear();
+    // Checks one datagram and queues the buzz it carries; package-private so tests can feed it frames
+    void onDatagram(ByteBuffer frame, InetSocketAddress sender, long received) {
+        // Nothing in the datagram is read before its sender is known to be within its limit
+        if (rateLimiter != null && !rateLimiter.tryAcquire(sender, received)) {
+            rateLimited.lazySet(rateLimited.get() + 1);
+            return;
+        }
+
+        // Oversized or foreign datagrams are dropped before any lookup
+        if (!UDPMessage.isBuzz(frame)) {
+            rejected.lazySet(rejected.get() + 1);
+            return;
         }
+
+        // Find the client by the session token it was given over TCP; the sender address must match
+        // the TCP connection so a token alone cannot buzz for someone else
+        ClientConnection clientThread = server.getSessionTable().lookup(UDPMessage.readToken(frame));
+        if (clientThread != null && clientThread.getClientAddress().equals(sender.getAddress())) {
+            // Process the message and handle buzz logic
+            processBuzz(clientThread, UDPMessage.readQuestionNumber(frame),
+                        UDPMessage.readTimestamp(frame), received);
+        } else {
+            rejected.lazySet(rejected.get() + 1);
+        }
+    }
+
+    public int getReceiver() {
+        return receiver;
     }
 
-    // Added by Eric - Allows the server to get the ID of the first buzzed client
-    public Integer getFirstBuzzedClient() {
-        return buzzQueue.poll();
+    // Datagrams read from this receiver's socket
+    public long getPackets() {
+        return packets.get();
     }
 
-    // Added by Brooks - Added method to check if buzz queue is empty
-    public boolean isBuzzQueueEmpty() {
-        return buzzQueue.isEmpty();
+    // Datagrams dropped as malformed, or with an unknown token or the wrong sender address
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    // Datagrams dropped unread because their sender was over its rate limit
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    public BuzzRateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     // Added by Eric - Method to process the buzz while maintaining timestamp order
     // Modified by Brooks - Simplified buzz processing for extra credit feature
-    private void processBuzz(ClientThread clientThread, UDPMessage receivedMessage) {
-        if (clientThread != null) {
-            Integer clientID = clientThread.getClientId();
-            
-            // Prevent duplicate buzzes from same client
-            if (!buzzQueue.contains(clientID)) {
-                buzzQueue.add(clientID);
-                System.out.println("Client " + clientID + " added to buzz queue");
-            }
-            
-            System.out.println("Current Queue: " + buzzQueue);
-        } else {
-            System.out.println("Client not found for IP: " + receivedMessage.getClientIP());
+    // Also called by GameSimulation, which stands in for the socket; returns whether the buzz was queued
+    static boolean processBuzz(ClientConnection clientThread, int questionNumber, long clientTimestamp, long received) {
+        GameRoom room = clientThread.getRoom();
+        // Buzzes for a question the room has already moved past are stale
+        if (questionNumber != 0 && questionNumber != room.getCurrentQuestionNumber()) {
+            return false;
         }
-    }
-
-    // Added by Eric - Method to get the client thread based on the UDP client sender IP
-    private ClientThread getClientThreadByIP(String ip) {
-        for (ClientThread client : server.getActiveClients().values()) {
-            if (client.getClientIP().equals(ip)) {
-                return client;
-            }
+        // Each room keeps its own buzz queue, ordered by corrected press time, which also drops duplicate buzzes;
+        // repeats are turned away before working out a press time for them
+        BuzzQueue buzzQueue = room.getBuzzQueue();
+        if (buzzQueue.hasBuzzed(clientThread)) {
+            return false;
+        }
+        if (buzzQueue.addBuzz(clientThread, room.pressTime(clientThread, clientTimestamp))) {
+            Metrics.BUZZ_INGEST.recordSince(received);
+            room.onBuzzAccepted(clientThread);
+            return true;
         }
-        return null; 
+        return false;
     }
 }
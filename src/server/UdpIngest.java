@@ -0,0 +1,159 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+// Buzz ingest spread over several cores: one UDPThread per DatagramChannel, all bound to the buzz port with
+// SO_REUSEPORT. The kernel hashes each sender to one of the sockets, so a client's buzzes are always read by
+// the same thread while different clients are read in parallel, and each thread feeds the lock-free buzz
+// queue of the client's room. Where SO_REUSEPORT is not available a single receiver is used.
+// Each receiver has its own BuzzRateLimiter (udp.rateLimit.*), which needs no lock for the same reason.
+public class UdpIngest {
+    private static final Path[] PROC_NET_UDP = {Paths.get("/proc/net/udp"), Paths.get("/proc/net/udp6")};
+
+    private final DatagramChannel[] channels;
+    private final UDPThread[] receivers;
+    private final int port;
+    private final int receiveBufferBytes;
+
+    // receiveBufferBytes sets SO_RCVBUF on every socket (0 keeps the system default); the kernel may grant less
+    public UdpIngest(InetAddress address, int port, int receiverCount, int receiveBufferBytes,
+                     ServerTrivia server, ExecutorService executorService) throws IOException {
+        int count = Math.max(1, receiverCount);
+        channels = new DatagramChannel[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                DatagramChannel channel = DatagramChannel.open();
+                channels[i] = channel;
+                if (count > 1) {
+                    if (!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                        System.err.println("SO_REUSEPORT is not supported here; using one UDP receiver");
+                        count = 1;
+                    } else {
+                        channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                    }
+                }
+                if (receiveBufferBytes > 0) {
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferBytes);
+                }
+                // With port 0 the first socket picks the port and the others join it
+                channel.bind(new InetSocketAddress(address, i == 0 ? port : portOf(channels[0])));
+            }
+        } catch (IOException e) {
+            closeAll(channels);
+            throw e;
+        }
+        this.port = portOf(channels[0]);
+
+        int granted = channels[0].getOption(StandardSocketOptions.SO_RCVBUF);
+        if (receiveBufferBytes > 0 && granted < receiveBufferBytes) {
+            System.err.println("UDP receive buffer capped at " + granted + " bytes instead of " + receiveBufferBytes +
+                               "; raise net.core.rmem_max to allow more");
+        }
+        this.receiveBufferBytes = granted;
+
+        ServerConfig config = server.getConfig();
+        int perSecond = config.getInt("udp.rateLimit.perSecond", 20);
+        int burst = config.getInt("udp.rateLimit.burst", 10);
+        int addressPerSecond = config.getInt("udp.rateLimit.addressPerSecond", 1000);
+        int addressBurst = config.getInt("udp.rateLimit.addressBurst", 500);
+        int tableSize = config.getInt("udp.rateLimit.tableSize", 16384);
+        receivers = new UDPThread[count];
+        for (int i = 0; i < count; i++) {
+            BuzzRateLimiter rateLimiter = perSecond > 0
+                    ? new BuzzRateLimiter(perSecond, burst, addressPerSecond, addressBurst, tableSize) : null;
+            receivers[i] = new UDPThread(channels[i], server, i, rateLimiter);
+            executorService.submit(receivers[i]);
+        }
+        System.out.println("UDP server started on port " + this.port + " with " + count + " receivers, " +
+                           granted + " byte receive buffers" +
+                           (perSecond > 0 ? ", " + perSecond + " buzzes/s per source (burst " + burst + ") and " +
+                                            addressPerSecond + " per address (burst " + addressBurst + ")" : ""));
+    }
+
+    private int portOf(DatagramChannel channel) throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    // Closing the sockets ends the receive loops
+    public void close() {
+        closeAll(channels);
+    }
+
+    private static void closeAll(DatagramChannel[] channels) {
+        for (DatagramChannel channel : channels) {
+            if (channel == null) {
+                continue;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing UDP socket: " + e.getMessage());
+            }
+        }
+    }
+
+    public UDPThread[] getReceivers() {
+        return receivers;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    // SO_RCVBUF as granted by the kernel
+    public int getReceiveBufferBytes() {
+        return receiveBufferBytes;
+    }
+
+    // Datagrams the kernel dropped on the buzz port because a socket's receive buffer was full, or -1 where
+    // the system does not report it (only Linux does, through /proc/net/udp)
+    public long getKernelDrops() {
+        return sumProcNetUdp(true);
+    }
+
+    // Bytes received by the kernel and not yet read by a receiver, or -1 where the system does not report it
+    public long getKernelQueuedBytes() {
+        return sumProcNetUdp(false);
+    }
+
+    // Rows look like "sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode
+    // ref pointer drops", with the local port and queue sizes in hex
+    private long sumProcNetUdp(boolean drops) {
+        long total = 0;
+        boolean found = false;
+        String portSuffix = String.format(Locale.ROOT, ":%04X", port);
+        for (Path file : PROC_NET_UDP) {
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+            } catch (IOException e) {
+                continue;
+            }
+            found = true;
+            for (int i = 1; i < lines.size(); i++) {
+                String[] fields = lines.get(i).trim().split("\\s+");
+                if (fields.length < 13 || !fields[1].endsWith(portSuffix)) {
+                    continue;
+                }
+                try {
+                    total += drops ? Long.parseLong(fields[12])
+                                   : Long.parseLong(fields[4].substring(fields[4].indexOf(':') + 1), 16);
+                } catch (NumberFormatException e) {
+                    // A row this parser does not understand; skip it rather than report nonsense
+                }
+            }
+        }
+        return found ? total : -1;
+    }
+}